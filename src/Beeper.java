@@ -0,0 +1,35 @@
+import java.awt.Toolkit;
+
+//the awt toolkit is only loaded once a rom actually uses the sound timer, and never when muted
+public class Beeper {
+    private static volatile Toolkit toolkit;
+    private static volatile boolean loading = false;
+
+
+    private Beeper() {
+    }
+
+    //loads the toolkit in the background, so the first beep does not stall the cpu thread
+    public static void prepare() {
+        if (toolkit != null || loading) {
+            return;
+        }
+        loading = true;
+
+        Thread thread = new Thread(Beeper::load, "beeper");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static void beep() {
+        load().beep();
+    }
+
+    private static synchronized Toolkit load() {
+        if (toolkit == null) {
+            toolkit = Toolkit.getDefaultToolkit();
+        }
+
+        return toolkit;
+    }
+}
@@ -1,18 +1,33 @@
-import java.awt.*;
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.Random;
 
 public class CPU {
     private static final int PC_START = 0x200;  //512
-    private static final int PC_END = 0xEFF;
     private static final int STACK_SIZE = 16;
     private static final int REGISTER_AMOUNT = 16;
+    //opaque access for the metrics counters, cheap enough for every instruction and never torn
+    private static final VarHandle INSTRUCTIONS;
+    private static final VarHandle UNDEFINED_OPCODES;
+    private static final VarHandle PUBLISHED_PC;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            INSTRUCTIONS = lookup.findVarHandle(CPU.class, "instructions", long.class);
+            UNDEFINED_OPCODES = lookup.findVarHandle(CPU.class, "undefinedOpcodes", long.class);
+            PUBLISHED_PC = lookup.findVarHandle(CPU.class, "publishedPc", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     private final Memory memory;
-    private final Display display;
+    private final FrameBuffer frameBuffer;
     private final Keyboard keyboard;
 
     private int pc;     //Program counter
@@ -30,13 +45,28 @@ public class CPU {
     private int nn;
     private int nnn;
 
+    private int randomState;
+    private long cycles;    //executed instructions since reset
+    private long frames;    //timer ticks since reset
+
+    //only written by the cpu thread, with opaque stores after every instruction, read by metrics
+    private long instructions;
+    private long undefinedOpcodes;
+    private int publishedPc;
+    private volatile String romHash = "";
+
     private boolean running;
-    private boolean drawFlag;
+    private boolean muted;  //no beeps and no console output, for headless and server sessions
 
+    //all off by default, which keeps the behaviour the emulator always had
+    private boolean shiftQuirk;     //8xy6 and 8xyE shift vy into vx, like the cosmac vip (default: vx, like schip)
+    private boolean loadStoreQuirk; //fx55 and fx65 leave iReg behind the last register, like the cosmac vip (default: unchanged, like schip)
+    private boolean jumpQuirk;      //bnnn jumps to nnn plus vx, like chip-48 and schip (default: v0, like the cosmac vip)
 
-    public CPU(Display display, Keyboard keyboard) {
+
+    public CPU(FrameBuffer frameBuffer, Keyboard keyboard) {
         memory = new Memory();
-        this.display = display;
+        this.frameBuffer = frameBuffer;
         this.keyboard = keyboard;
 
         pc = PC_START;
@@ -47,9 +77,15 @@ public class CPU {
         delayTimer = 0;
         soundTimer = 0;
         opcode = 0;
+        randomState = seed();
+        cycles = 0;
+        frames = 0;
 
         running = false;
-        drawFlag = false;
+        muted = false;
+        shiftQuirk = false;
+        loadStoreQuirk = false;
+        jumpQuirk = false;
 
         initFont();
     }
@@ -78,8 +114,7 @@ public class CPU {
     }
 
     public void softReset() {
-        display.clear();
-        drawFlag = true;
+        frameBuffer.reset();
 
         pc = PC_START;
         Arrays.fill(stack, 0);
@@ -89,8 +124,35 @@ public class CPU {
         delayTimer = 0;
         soundTimer = 0;
         opcode = 0;
+        randomState = seed();
+        cycles = 0;
+        frames = 0;
+    }
 
+    private static int seed() {
+        //xorshift must not start at 0
+        return (int) System.nanoTime() | 1;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(pc, stack.clone(), sp, iReg, vReg.clone(), delayTimer, soundTimer,
+                randomState, cycles, frames, memory.toBytes(), frameBuffer.copy());
+    }
+
+    public void restore(Snapshot snapshot) {
+        pc = snapshot.pc;
+        System.arraycopy(snapshot.stack, 0, stack, 0, STACK_SIZE);
+        sp = snapshot.sp;
+        iReg = snapshot.iReg;
+        System.arraycopy(snapshot.vReg, 0, vReg, 0, REGISTER_AMOUNT);
+        delayTimer = snapshot.delayTimer;
+        soundTimer = snapshot.soundTimer;
+        randomState = snapshot.randomState;
+        cycles = snapshot.cycles;
+        frames = snapshot.frames;
 
+        memory.set(snapshot.memory, 0);
+        frameBuffer.restore(snapshot.graphic);
     }
 
     public void hardReset() {
@@ -100,33 +162,40 @@ public class CPU {
     }
 
     public void loadRom(String path) {
-        memory.clear(PC_START, PC_END);
-
         try {
-            byte[] data = Files.readAllBytes(Paths.get(path));
-            int[] buffer = new int[data.length];
-
-            for (int i = 0; i < data.length; ++i) {
-                buffer[i] = data[i];
-            }
-
-            memory.set(buffer, PC_START);
+            loadRom(Files.readAllBytes(Paths.get(path)));
         } catch (IOException e) {
             e.printStackTrace();
         }
+    }
+
+    public void loadRom(byte[] data) {
+        memory.clear(PC_START);
+        memory.set(data, PC_START);
+        romHash = RomHash.sha1(data);
+
+        running = true;
+    }
+
+    //for roms that are already hashed, like the ones in a RomPack
+    public void loadRom(ByteBuffer data, String hash) {
+        memory.clear(PC_START);
+        memory.set(data, PC_START);
+        romHash = hash;
 
         running = true;
-        drawFlag = true;
     }
 
     public void updateTimers() {
+        ++frames;
+
         if (delayTimer > 0) {
             --delayTimer;
         }
 
         if (soundTimer > 0) {
-            if (soundTimer == 1) {
-                Toolkit.getDefaultToolkit().beep();
+            if (soundTimer == 1 && !muted) {
+                Beeper.beep();
                 System.out.println("BEEP");
             }
             --soundTimer;
@@ -137,23 +206,96 @@ public class CPU {
         return running;
     }
 
-    public boolean isDrawFlag() {
-        return drawFlag;
+    public void setMuted(boolean muted) {
+        this.muted = muted;
+    }
+
+    public void setShiftQuirk(boolean shiftQuirk) {
+        this.shiftQuirk = shiftQuirk;
+    }
+
+    public void setLoadStoreQuirk(boolean loadStoreQuirk) {
+        this.loadStoreQuirk = loadStoreQuirk;
+    }
+
+    public void setJumpQuirk(boolean jumpQuirk) {
+        this.jumpQuirk = jumpQuirk;
     }
 
-    public void setDrawFlag(boolean drawFlag) {
-        this.drawFlag = drawFlag;
+    public long getCycles() {
+        return cycles;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public Memory getMemory() {
+        return memory;
+    }
+
+    public int getPc() {
+        return pc;
+    }
+
+    public int getSp() {
+        return sp;
+    }
+
+    public int[] getStack() {
+        return Arrays.copyOf(stack, STACK_SIZE);
+    }
+
+    public int getiReg() {
+        return iReg;
+    }
+
+    public int getvReg(int index) {
+        return vReg[index];
+    }
+
+    public int[] getvReg() {
+        return Arrays.copyOf(vReg, REGISTER_AMOUNT);
+    }
+
+    public int getDelayTimer() {
+        return delayTimer;
+    }
+
+    public int getSoundTimer() {
+        return soundTimer;
     }
 
     public void cycle() {
         //fetch
-        opcode = memory.get(pc) << 8 | memory.get(pc + 1);
+        opcode = memory.fetch(pc);
         pc += 2;
+        ++cycles;
 
         //System.out.printf("0x%04X%n", opcode);
 
         decode();
         reduce();
+
+        INSTRUCTIONS.setOpaque(this, instructions + 1);
+        PUBLISHED_PC.setOpaque(this, pc);
+    }
+
+    //the following getters may be read from other threads
+    public long getInstructionCount() {
+        return (long) INSTRUCTIONS.getOpaque(this);
+    }
+
+    public long getUndefinedOpcodeCount() {
+        return (long) UNDEFINED_OPCODES.getOpaque(this);
+    }
+
+    public int getPublishedPc() {
+        return (int) PUBLISHED_PC.getOpaque(this);
+    }
+
+    public String getRomHash() {
+        return romHash;
     }
 
     public void debug() {
@@ -192,8 +334,36 @@ public class CPU {
                         //return from subroutine
                         returnSub();
                         break;
+                    case 0xFB:
+                        //scroll right by 4 pixels
+                        frameBuffer.scrollRight(4);
+                        break;
+                    case 0xFC:
+                        //scroll left by 4 pixels
+                        frameBuffer.scrollLeft(4);
+                        break;
+                    case 0xFE:
+                        //low resolution
+                        frameBuffer.setHires(false);
+                        break;
+                    case 0xFF:
+                        //high resolution
+                        frameBuffer.setHires(true);
+                        break;
                     default:
-                        opcodeNotDefined();
+                        switch (opcode & 0x00F0) {
+                            case 0xC0:
+                                //scroll down by n pixels
+                                frameBuffer.scrollDown(n);
+                                break;
+                            case 0xD0:
+                                //scroll up by n pixels
+                                frameBuffer.scrollUp(n);
+                                break;
+                            default:
+                                opcodeNotDefined();
+                                break;
+                        }
                         break;
                 }
                 break;
@@ -214,8 +384,23 @@ public class CPU {
                 skipIfRegNotEqualVal();
                 break;
             case 0x5000:
-                //skip if register equal register
-                skipIfRegEqualReg();
+                switch (opcode & 0x000F) {
+                    case 0x0000:
+                        //skip if register equal register
+                        skipIfRegEqualReg();
+                        break;
+                    case 0x0002:
+                        //store registers vx to vy
+                        storeRegRange();
+                        break;
+                    case 0x0003:
+                        //load registers vx to vy
+                        loadRegRange();
+                        break;
+                    default:
+                        opcodeNotDefined();
+                        break;
+                }
                 break;
             case 0x6000:
                 //set register to value
@@ -305,6 +490,18 @@ public class CPU {
                 break;
             case 0xF000:
                 switch (opcode & 0x00FF) {
+                    case 0x00:
+                        //set iReg to the following 16 bit word
+                        if (x == 0) {
+                            setiRegToLongVal();
+                        } else {
+                            opcodeNotDefined();
+                        }
+                        break;
+                    case 0x01:
+                        //select drawing planes
+                        selectPlanes();
+                        break;
                     case 0x07:
                         //set register to delay timer
                         setRegToDelay();
@@ -357,17 +554,29 @@ public class CPU {
     }
 
     private void opcodeNotDefined() {
-        System.err.println("Opcode: " + String.format("0x%04X", opcode) + " was not defined");
+        UNDEFINED_OPCODES.setOpaque(this, undefinedOpcodes + 1);
+
+        //a rom looping on an undefined opcode would flood the console and stall a server thread
+        if (!muted) {
+            System.err.println("Opcode: " + String.format("0x%04X", opcode) + " was not defined");
+        }
     }
 
     private void clearScreen() {
-        display.clear();
-        drawFlag = true;
+        frameBuffer.clear();
     }
 
     private void returnSub() {
         pc = stack[--sp];
-        drawFlag = true;
+    }
+
+    //skips the next instruction, the long i load is 4 bytes long
+    private void skip() {
+        if (memory.peek(pc) == 0xF0 && memory.peek(pc + 1) == 0x00) {
+            pc += 4;
+        } else {
+            pc += 2;
+        }
     }
 
     private void jump() {
@@ -381,17 +590,17 @@ public class CPU {
 
     private void skipIfRegEqualVal() {
         if (vReg[x] == nn)
-            pc += 2;
+            skip();
     }
 
     private void skipIfRegNotEqualVal() {
         if (vReg[x] != nn)
-            pc += 2;
+            skip();
     }
 
     private void skipIfRegEqualReg() {
         if (vReg[x] == vReg[y])
-            pc += 2;
+            skip();
     }
 
     private void setRegToVal() {
@@ -441,10 +650,12 @@ public class CPU {
     }
 
     private void shiftRight() {
+        int value = shiftQuirk ? vReg[y] : vReg[x];
+
         //store lsb to VF
-        vReg[0xF] = vReg[x] & 0x1;
+        vReg[0xF] = value & 0x1;
 
-        vReg[x] = vReg[x] >> 1;
+        vReg[x] = value >> 1;
     }
 
     private void subRegFromRegReversed() {
@@ -459,15 +670,17 @@ public class CPU {
     }
 
     private void shiftLeft() {
+        int value = shiftQuirk ? vReg[y] : vReg[x];
+
         //store msb to VF
-        vReg[0xF] = vReg[x] >> 7;
+        vReg[0xF] = value >> 7;
 
-        vReg[x] = vReg[x] << 1;
+        vReg[x] = value << 1;
     }
 
     private void skipIfRegNotEqualReg() {
         if (vReg[x] != vReg[y]) {
-            pc += 2;
+            skip();
         }
     }
 
@@ -475,52 +688,77 @@ public class CPU {
         iReg = nnn;
     }
 
-    private void jumpPlusRegZero() {
-        pc = nnn + vReg[0x0];
+    private void setiRegToLongVal() {
+        //the operand is part of the instruction, so observers see it executed, like a patched operand in self modifying code
+        iReg = memory.fetch(pc);
+        pc += 2;
     }
 
-    private void setRegToRand() {
-        vReg[x] = new Random().nextInt() % (0x100) & nn;
+    private void selectPlanes() {
+        frameBuffer.setSelectedPlanes(x);
     }
 
-    private void drawSprite() {
-        vReg[0xF] = 0;
-
-        for (int yLine = 0; yLine < n; ++yLine) {
-
-            int pixel = memory.get(iReg + yLine);
+    private void jumpPlusRegZero() {
+        pc = nnn + vReg[jumpQuirk ? x : 0x0];
+    }
 
-            for (int xLine = 0; xLine < 8; ++xLine) {
-                //a pixel gets drawn, if a bit is 1
-                if ((pixel & (0x80 >> xLine)) != 0) {
+    private void setRegToRand() {
+        //xorshift, so the sequence is part of the snapshot state
+        randomState ^= randomState << 13;
+        randomState ^= randomState >>> 17;
+        randomState ^= randomState << 5;
 
-                    //if the coordinate is greater than the screen
-                    //int xCoord = vReg[x] + xLine % 64;
-                    //int yCoord = vReg[y] + yLine % 32;
-                    int xCoord = vReg[x] + xLine;
-                    int yCoord = vReg[y] + yLine;
+        vReg[x] = randomState & 0xFF & nn;
+    }
 
-                    if (display.getPixel(xCoord, yCoord) == 1) {
-                        vReg[0xF] = 1;
-                    }
+    private void drawSprite() {
+        //the start position wraps, everything past the edges is clipped
+        int xCoord = vReg[x] % frameBuffer.getWidth();
+        int yCoord = vReg[y] % frameBuffer.getHeight();
+
+        //n = 0 draws a 16x16 sprite
+        boolean large = n == 0;
+        int rows = large ? 16 : n;
+        int address = iReg;
+        int result = 0;     //FrameBuffer.CHANGED and COLLISION of all rows
+
+        //the sprite data of the selected planes follows each other
+        for (int plane = 0; plane < FrameBuffer.PLANES; ++plane) {
+            if ((frameBuffer.getSelectedPlanes() & 1 << plane) == 0) {
+                continue;
+            }
 
-                    display.setPixel(xCoord, yCoord);
+            for (int yLine = 0; yLine < rows; ++yLine) {
+                int bits;
+                if (large) {
+                    bits = memory.get(address) << 8 | memory.get(address + 1);
+                    address += 2;
+                } else {
+                    bits = memory.get(address);
+                    address += 1;
                 }
+
+                result |= frameBuffer.drawRow(plane, xCoord, yCoord + yLine, bits, large ? 16 : 8);
             }
         }
 
-        drawFlag = true;
+        //a single version bump per sprite, and none if nothing was drawn
+        if ((result & FrameBuffer.CHANGED) != 0) {
+            frameBuffer.markChanged();
+        }
+
+        vReg[0xF] = (result & FrameBuffer.COLLISION) != 0 ? 1 : 0;
     }
 
     private void skipIfKeyPressed() {
         if (keyboard.isPressed(x)) {
-            pc += 2;
+            skip();
         }
     }
 
     private void skipIfKeyNotPressed() {
         if (!keyboard.isPressed(x)) {
-            pc += 2;
+            skip();
         }
     }
 
@@ -531,7 +769,9 @@ public class CPU {
     private void waitForKey() {
         for (int i = 0; i <= 0xF; ++i) {
             if (keyboard.isPressed(i)) {
-                System.out.println("Key: " + i);
+                if (!muted) {
+                    System.out.println("Key: " + i);
+                }
                 vReg[x] = i;
                 keyboard.setKey(i, false);
                 return;
@@ -548,15 +788,18 @@ public class CPU {
 
     private void setSoundToReg() {
         soundTimer = vReg[x];
+
+        if (!muted) {
+            Beeper.prepare();
+        }
     }
 
     private void addRegToiReg() {
-        iReg += vReg[x];
+        iReg = (iReg + vReg[x]) & 0xFFFF;
     }
 
     private void loadSpriteToiReg() {
         iReg = vReg[x] * 0x5;
-        drawFlag = true;
     }
 
     private void loadExSpriteToiReg() {
@@ -573,12 +816,37 @@ public class CPU {
         for (int i = 0; i <= x; ++i) {
             memory.set(vReg[i], iReg + i);
         }
+
+        if (loadStoreQuirk) {
+            iReg = (iReg + x + 1) & 0xFFFF;
+        }
+    }
+
+    //vx to vy, in either direction, without changing iReg
+    private void storeRegRange() {
+        int step = x <= y ? 1 : -1;
+
+        for (int i = 0; i <= Math.abs(x - y); ++i) {
+            memory.set(vReg[x + i * step], iReg + i);
+        }
+    }
+
+    private void loadRegRange() {
+        int step = x <= y ? 1 : -1;
+
+        for (int i = 0; i <= Math.abs(x - y); ++i) {
+            vReg[x + i * step] = memory.get(iReg + i);
+        }
     }
 
     private void loadReg() {
         for (int i = 0; i <= x; ++i) {
             vReg[i] = memory.get(iReg + i);
         }
+
+        if (loadStoreQuirk) {
+            iReg = (iReg + x + 1) & 0xFFFF;
+        }
     }
 }
 
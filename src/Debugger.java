@@ -0,0 +1,253 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+//Main only runs cycle() of the debugger while it is armed, the plain loop is used otherwise
+public class Debugger implements MemoryObserver {
+    private final CPU cpu;
+
+    private final Set<Integer> breakpoints = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> watchpoints = ConcurrentHashMap.newKeySet();
+    private final List<RegisterCondition> conditions = new CopyOnWriteArrayList<>();
+
+    private volatile boolean paused;
+    private volatile boolean stepRequested;
+    private volatile int stopDepth;     //stop once sp drops to this depth, -1 if unused
+    private volatile int watchHit;      //address of the last watched write, -1 if none
+    private volatile boolean checkFirst;    //check the breakpoint at pc before the first cycle of the loop
+    private volatile int resumedAt;     //pc the loop was resumed at, its breakpoint was already hit
+    private volatile String reason;
+
+    private Runnable onArmedChanged;
+    private Runnable onBreak;
+
+
+    public Debugger(CPU cpu) {
+        this.cpu = cpu;
+
+        paused = false;
+        stepRequested = false;
+        stopDepth = -1;
+        watchHit = -1;
+        checkFirst = false;
+        resumedAt = -1;
+        reason = "";
+    }
+
+    public void setOnArmedChanged(Runnable onArmedChanged) {
+        this.onArmedChanged = onArmedChanged;
+    }
+
+    public void setOnBreak(Runnable onBreak) {
+        this.onBreak = onBreak;
+    }
+
+    public boolean isArmed() {
+        return paused
+                || stopDepth >= 0
+                || !breakpoints.isEmpty()
+                || !watchpoints.isEmpty()
+                || !conditions.isEmpty();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    //Main calls this whenever it (re)starts the armed loop
+    public void rearm() {
+        checkFirst = true;
+    }
+
+    public void cycle() {
+        if (paused) {
+            if (!stepRequested) {
+                return;
+            }
+
+            stepRequested = false;
+            cpu.cycle();
+
+            //a watched write or a breakpoint reached by the step is reported as the reason
+            String hit = check();
+            breakNow(hit != null ? hit : "Step");
+            return;
+        }
+
+        //breakpoints are otherwise only checked after a cycle, which would run the instruction at pc
+        if (checkFirst) {
+            checkFirst = false;
+            int pc = cpu.getPc();
+
+            if (pc != resumedAt && breakpoints.contains(pc)) {
+                breakNow(String.format("Breakpoint 0x%03X", pc));
+                return;
+            }
+        }
+        resumedAt = -1;
+
+        cpu.cycle();
+
+        String hit = check();
+        if (hit != null) {
+            breakNow(hit);
+        }
+    }
+
+    private String check() {
+        int pc = cpu.getPc();
+
+        if (watchHit >= 0) {
+            String hit = String.format("Watchpoint 0x%03X written", watchHit);
+            watchHit = -1;
+            return hit;
+        }
+
+        if (stopDepth >= 0 && cpu.getSp() <= stopDepth) {
+            stopDepth = -1;
+            return "Returned";
+        }
+
+        if (breakpoints.contains(pc)) {
+            return String.format("Breakpoint 0x%03X", pc);
+        }
+
+        for (RegisterCondition condition : conditions) {
+            if (condition.triggered(cpu)) {
+                return "Condition " + condition;
+            }
+        }
+
+        return null;
+    }
+
+    private void breakNow(String reason) {
+        this.reason = reason;
+        paused = true;
+
+        //any break ends a step over or run to return, a later resume must not stop at the return
+        stopDepth = -1;
+        //a watched write that was not reported yet must not break right after the next resume
+        watchHit = -1;
+
+        if (onBreak != null) {
+            onBreak.run();
+        }
+    }
+
+    @Override
+    public void onWrite(int pos, int value) {
+        if (watchpoints.contains(pos)) {
+            watchHit = pos;
+        }
+    }
+
+    public void pause() {
+        breakNow("Paused");
+        armedChanged();
+    }
+
+    public void resume() {
+        reason = "";
+        resumedAt = cpu.getPc();
+        paused = false;
+        armedChanged();
+    }
+
+    public void step() {
+        if (paused) {
+            stepRequested = true;
+        }
+    }
+
+    public void stepOver() {
+        if (!paused) {
+            return;
+        }
+
+        int pc = cpu.getPc();
+        int opcode = cpu.getMemory().peek(pc) << 8 | cpu.getMemory().peek(pc + 1);
+
+        //only a call has something to step over
+        if ((opcode & 0xF000) == 0x2000) {
+            stopDepth = cpu.getSp();
+            resume();
+        } else {
+            step();
+        }
+    }
+
+    public void runToReturn() {
+        if (!paused || cpu.getSp() == 0) {
+            return;
+        }
+
+        stopDepth = cpu.getSp() - 1;
+        resume();
+    }
+
+    public boolean toggleBreakpoint(int address) {
+        boolean added = breakpoints.add(address);
+        if (!added) {
+            breakpoints.remove(address);
+        }
+
+        armedChanged();
+        return added;
+    }
+
+    public boolean toggleWatchpoint(int address) {
+        boolean added = watchpoints.add(address);
+        if (!added) {
+            watchpoints.remove(address);
+        }
+
+        //only observe memory while there is something to watch
+        cpu.getMemory().removeObserver(this);
+        if (!watchpoints.isEmpty()) {
+            cpu.getMemory().addObserver(this);
+        }
+
+        armedChanged();
+        return added;
+    }
+
+    public void addCondition(RegisterCondition condition) {
+        conditions.add(condition);
+        armedChanged();
+    }
+
+    public void clear() {
+        breakpoints.clear();
+        watchpoints.clear();
+        conditions.clear();
+        cpu.getMemory().removeObserver(this);
+        stopDepth = -1;
+        watchHit = -1;
+
+        armedChanged();
+    }
+
+    public boolean hasBreakpoint(int address) {
+        return breakpoints.contains(address);
+    }
+
+    public Set<Integer> getWatchpoints() {
+        return watchpoints;
+    }
+
+    public List<RegisterCondition> getConditions() {
+        return conditions;
+    }
+
+    private void armedChanged() {
+        if (onArmedChanged != null) {
+            onArmedChanged.run();
+        }
+    }
+}
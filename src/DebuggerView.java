@@ -0,0 +1,158 @@
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+
+import java.util.function.IntPredicate;
+
+public class DebuggerView extends BorderPane {
+    private static final int LINES_BEFORE_PC = 8;
+    private static final int LINES_AFTER_PC = 16;
+
+    private final CPU cpu;
+    private final Debugger debugger;
+
+    private final Label registers = new Label();
+    private final Label status = new Label();
+    private final ListView<String> disassembly = new ListView<>();
+    private final ListView<String> stack = new ListView<>();
+    private final ListView<String> points = new ListView<>();
+    private final TextField input = new TextField();
+
+
+    public DebuggerView(CPU cpu, Debugger debugger) {
+        this.cpu = cpu;
+        this.debugger = debugger;
+
+        Font mono = Font.font("Monospaced", 12);
+        registers.setFont(mono);
+        status.setFont(mono);
+        disassembly.setPrefWidth(260);
+        stack.setPrefWidth(120);
+        points.setPrefWidth(160);
+
+        //Controls
+        Button pauseButton = new Button("Pause");
+        Button resumeButton = new Button("Resume");
+        Button stepButton = new Button("Step");
+        Button stepOverButton = new Button("Step over");
+        Button returnButton = new Button("Run to return");
+        HBox runControls = new HBox(5, pauseButton, resumeButton, stepButton, stepOverButton, returnButton);
+
+        input.setPromptText("0x200 or V3 == 0x10");
+        Button breakpointButton = new Button("Toggle breakpoint");
+        Button watchpointButton = new Button("Toggle watchpoint");
+        Button conditionButton = new Button("Add condition");
+        Button clearButton = new Button("Clear all");
+        HBox pointControls = new HBox(5, input, breakpointButton, watchpointButton, conditionButton, clearButton);
+
+        //View
+        VBox left = new VBox(5, new Label("Registers"), registers, status);
+        VBox right = new VBox(5, new Label("Stack"), stack, new Label("Watch / Conditions"), points);
+        VBox bottom = new VBox(5, runControls, pointControls);
+        left.setPadding(new Insets(5));
+        right.setPadding(new Insets(5));
+        bottom.setPadding(new Insets(5));
+
+        setLeft(left);
+        setCenter(disassembly);
+        setRight(right);
+        setBottom(bottom);
+
+        //Bind Buttons
+        pauseButton.setOnAction(event -> debugger.pause());
+        resumeButton.setOnAction(event -> debugger.resume());
+        stepButton.setOnAction(event -> debugger.step());
+        stepOverButton.setOnAction(event -> debugger.stepOver());
+        returnButton.setOnAction(event -> debugger.runToReturn());
+        breakpointButton.setOnAction(event -> withAddress(debugger::toggleBreakpoint));
+        watchpointButton.setOnAction(event -> withAddress(debugger::toggleWatchpoint));
+        conditionButton.setOnAction(event -> addCondition());
+        clearButton.setOnAction(event -> {
+            debugger.clear();
+            refresh();
+        });
+
+        debugger.setOnBreak(() -> Platform.runLater(this::refresh));
+        refresh();
+    }
+
+    private void withAddress(IntPredicate action) {
+        String text = input.getText().trim().toLowerCase();
+
+        try {
+            int address = text.startsWith("0x")
+                    ? Integer.parseInt(text.substring(2), 16)
+                    : Integer.parseInt(text, 16);
+            action.test(address);
+            refresh();
+        } catch (NumberFormatException e) {
+            status.setText("Invalid address: " + text);
+        }
+    }
+
+    private void addCondition() {
+        try {
+            debugger.addCondition(RegisterCondition.parse(input.getText()));
+            refresh();
+        } catch (IllegalArgumentException e) {
+            status.setText(e.getMessage());
+        }
+    }
+
+    public void refresh() {
+        int pc = cpu.getPc();
+        int sp = cpu.getSp();
+        int[] vReg = cpu.getvReg();
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < vReg.length; ++i) {
+            builder.append(String.format("V%X: 0x%02X%n", i, vReg[i]));
+        }
+        builder.append(String.format("I:  0x%04X%n", cpu.getiReg()));
+        builder.append(String.format("PC: 0x%03X%n", pc));
+        builder.append(String.format("SP: %d%n", sp));
+        builder.append(String.format("DT: %d%n", cpu.getDelayTimer()));
+        builder.append(String.format("ST: %d", cpu.getSoundTimer()));
+        registers.setText(builder.toString());
+
+        status.setText(debugger.isPaused() ? debugger.getReason() : "Running");
+
+        //Stack, top entry first
+        int[] entries = cpu.getStack();
+        stack.getItems().clear();
+        for (int i = sp - 1; i >= 0; --i) {
+            stack.getItems().add(String.format("%2d: 0x%03X", i, entries[i]));
+        }
+
+        points.getItems().clear();
+        for (int address : debugger.getWatchpoints()) {
+            points.getItems().add(String.format("W 0x%03X", address));
+        }
+        for (RegisterCondition condition : debugger.getConditions()) {
+            points.getItems().add("C " + condition);
+        }
+
+        //Disassembly around pc, instructions are 2 bytes
+        Memory memory = cpu.getMemory();
+        int start = Math.max(0, pc - LINES_BEFORE_PC * 2);
+        int end = Math.min(Memory.MEMORY_SIZE - 2, pc + LINES_AFTER_PC * 2);
+
+        disassembly.getItems().clear();
+        for (int address = start; address <= end; address += 2) {
+            int opcode = memory.peek(address) << 8 | memory.peek(address + 1);
+            String marker = address == pc ? ">" : " ";
+            String breakpoint = debugger.hasBreakpoint(address) ? "*" : " ";
+
+            disassembly.getItems().add(String.format("%s%s 0x%03X  %04X  %s",
+                    marker, breakpoint, address, opcode, Disassembler.disassemble(opcode)));
+        }
+        disassembly.getSelectionModel().select((pc - start) / 2);
+    }
+}
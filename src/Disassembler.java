@@ -0,0 +1,142 @@
+public class Disassembler {
+
+    private Disassembler() {
+    }
+
+    public static String disassemble(int opcode) {
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        int n = opcode & 0x000F;
+        int nn = opcode & 0x00FF;
+        int nnn = opcode & 0x0FFF;
+
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                switch (nn) {
+                    case 0xE0:
+                        return "CLS";
+                    case 0xEE:
+                        return "RET";
+                    case 0xFB:
+                        return "SCR";
+                    case 0xFC:
+                        return "SCL";
+                    case 0xFE:
+                        return "LOW";
+                    case 0xFF:
+                        return "HIGH";
+                    default:
+                        break;
+                }
+                switch (opcode & 0x00F0) {
+                    case 0xC0:
+                        return String.format("SCD %d", n);
+                    case 0xD0:
+                        return String.format("SCU %d", n);
+                    default:
+                        return data(opcode);
+                }
+            case 0x1000:
+                return String.format("JP 0x%03X", nnn);
+            case 0x2000:
+                return String.format("CALL 0x%03X", nnn);
+            case 0x3000:
+                return String.format("SE V%X, 0x%02X", x, nn);
+            case 0x4000:
+                return String.format("SNE V%X, 0x%02X", x, nn);
+            case 0x5000:
+                switch (n) {
+                    case 0x0:
+                        return String.format("SE V%X, V%X", x, y);
+                    case 0x2:
+                        return String.format("SAVE V%X - V%X", x, y);
+                    case 0x3:
+                        return String.format("LOAD V%X - V%X", x, y);
+                    default:
+                        return data(opcode);
+                }
+            case 0x6000:
+                return String.format("LD V%X, 0x%02X", x, nn);
+            case 0x7000:
+                return String.format("ADD V%X, 0x%02X", x, nn);
+            case 0x8000:
+                switch (n) {
+                    case 0x0:
+                        return String.format("LD V%X, V%X", x, y);
+                    case 0x1:
+                        return String.format("OR V%X, V%X", x, y);
+                    case 0x2:
+                        return String.format("AND V%X, V%X", x, y);
+                    case 0x3:
+                        return String.format("XOR V%X, V%X", x, y);
+                    case 0x4:
+                        return String.format("ADD V%X, V%X", x, y);
+                    case 0x5:
+                        return String.format("SUB V%X, V%X", x, y);
+                    case 0x6:
+                        return String.format("SHR V%X", x);
+                    case 0x7:
+                        return String.format("SUBN V%X, V%X", x, y);
+                    case 0xE:
+                        return String.format("SHL V%X", x);
+                    default:
+                        return data(opcode);
+                }
+            case 0x9000:
+                return n == 0 ? String.format("SNE V%X, V%X", x, y) : data(opcode);
+            case 0xA000:
+                return String.format("LD I, 0x%03X", nnn);
+            case 0xB000:
+                return String.format("JP V0, 0x%03X", nnn);
+            case 0xC000:
+                return String.format("RND V%X, 0x%02X", x, nn);
+            case 0xD000:
+                return String.format("DRW V%X, V%X, %d", x, y, n);
+            case 0xE000:
+                switch (nn) {
+                    case 0x9E:
+                        return String.format("SKP V%X", x);
+                    case 0xA1:
+                        return String.format("SKNP V%X", x);
+                    default:
+                        return data(opcode);
+                }
+            case 0xF000:
+                switch (nn) {
+                    case 0x00:
+                        //the address is the following word
+                        return x == 0 ? "LD I, long" : data(opcode);
+                    case 0x01:
+                        return String.format("PLANE %d", x);
+                    case 0x07:
+                        return String.format("LD V%X, DT", x);
+                    case 0x0A:
+                        return String.format("LD V%X, K", x);
+                    case 0x15:
+                        return String.format("LD DT, V%X", x);
+                    case 0x18:
+                        return String.format("LD ST, V%X", x);
+                    case 0x1E:
+                        return String.format("ADD I, V%X", x);
+                    case 0x29:
+                        return String.format("LD F, V%X", x);
+                    case 0x30:
+                        return String.format("LD HF, V%X", x);
+                    case 0x33:
+                        return String.format("LD B, V%X", x);
+                    case 0x55:
+                        return String.format("LD [I], V%X", x);
+                    case 0x65:
+                        return String.format("LD V%X, [I]", x);
+                    default:
+                        return data(opcode);
+                }
+            default:
+                return data(opcode);
+        }
+    }
+
+    private static String data(int opcode) {
+        return String.format("DW 0x%04X", opcode);
+    }
+}
@@ -1,53 +1,217 @@
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 
+import java.util.concurrent.atomic.LongAdder;
+
+//draws the framebuffer once into a small image and lets the canvas scale it nearest-neighbor,
+//so the per frame work does not depend on the window size
 public class Display extends Canvas {
-    private static final int WIDTH = 64;
-    private static final int HEIGHT = 32;
-    private static final int scale = 12;
+    private static final double FADE_THRESHOLD = 0.02;
 
-    private final int[][] graphic = new int[WIDTH][HEIGHT];
+    private final FrameBuffer frameBuffer;
 
     private final GraphicsContext gc;
+    private final WritableImage image;
+    private final int[] pixels;
+    private final float[] intensity;
+
+    //one color per combination of the 4 planes, 0 is the background
+    private final int[] palette = {
+            0xFF000000, 0xFFFFFFFF, 0xFFAAAAAA, 0xFF555555,
+            0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFF00,
+            0xFF880000, 0xFF008800, 0xFF000088, 0xFF888800,
+            0xFFFF00FF, 0xFF00FFFF, 0xFF880088, 0xFF008888
+    };
+    private final int[] lastColor;
+    private Color background = Color.BLACK;     //palette[0] as a Color, for the letterbox bars
+    private double persistence = 0;     //0 = off, otherwise the share of the last frame that is kept
+    private boolean integerScaling = true;
+    private volatile boolean fading = false;
 
-    public Display(double width, double height) {
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder renderCount = new LongAdder();
+
+    public Display(FrameBuffer frameBuffer, double width, double height) {
         super(width, height);
         setFocusTraversable(true);
 
+        this.frameBuffer = frameBuffer;
+
+        image = new WritableImage(FrameBuffer.MAX_WIDTH, FrameBuffer.MAX_HEIGHT);
+        pixels = new int[FrameBuffer.MAX_WIDTH * FrameBuffer.MAX_HEIGHT];
+        intensity = new float[FrameBuffer.MAX_WIDTH * FrameBuffer.MAX_HEIGHT];
+        lastColor = new int[FrameBuffer.MAX_WIDTH * FrameBuffer.MAX_HEIGHT];
+
         gc = this.getGraphicsContext2D();
-        gc.setFill(Color.BLACK);
-        gc.fillRect(0, 0, width, height);
-        clear();
+        gc.setImageSmoothing(false);
+
+        //redraw the last frame if the window gets resized
+        widthProperty().addListener(observable -> present());
+        heightProperty().addListener(observable -> present());
+        present();
     }
 
-    public void clear() {
-        for (int y = 0; y < HEIGHT; y++) {
-            for (int x = 0; x < WIDTH; x++) {
-                graphic[x][y] = 0;
-            }
-        }
+    @Override
+    public boolean isResizable() {
+        return true;
+    }
+
+    @Override
+    public void resize(double width, double height) {
+        setWidth(width);
+        setHeight(height);
+    }
+
+    @Override
+    public double minWidth(double height) {
+        return FrameBuffer.LORES_WIDTH;
+    }
+
+    @Override
+    public double minHeight(double width) {
+        return FrameBuffer.LORES_HEIGHT;
+    }
+
+    @Override
+    public double maxWidth(double height) {
+        return Double.MAX_VALUE;
+    }
+
+    @Override
+    public double maxHeight(double width) {
+        return Double.MAX_VALUE;
+    }
+
+    public void setColors(Color foreground, Color background) {
+        palette[1] = toArgb(foreground);
+        palette[0] = toArgb(background);
+        this.background = background;
+        render();
+    }
+
+    public void setPersistence(double persistence) {
+        this.persistence = persistence;
+    }
+
+    public double getPersistence() {
+        return persistence;
+    }
+
+    public void setIntegerScaling(boolean integerScaling) {
+        this.integerScaling = integerScaling;
+        present();
+    }
+
+    public boolean isIntegerScaling() {
+        return integerScaling;
+    }
+
+    //true while lit pixels are still fading out and further renders change the image
+    public boolean isFading() {
+        return fading;
+    }
+
+    public long getRenderNanos() {
+        return renderNanos.sum();
+    }
+
+    public long getRenderCount() {
+        return renderCount.sum();
     }
 
     public void render() {
-        for (int x = 0; x < graphic.length; x++) {
-            for (int y = 0; y < graphic[y].length; y++) {
-                if (graphic[x][y] == 1) {
-                    gc.setFill(Color.WHITE);
-                } else {
-                    gc.setFill(Color.BLACK);
-                }
+        long start = System.nanoTime();
+        int width = frameBuffer.getWidth();
+        int height = frameBuffer.getHeight();
+        int bg = palette[0];
+        boolean stillFading = false;
+
+        for (int y = 0; y < height; y++) {
+            for (int word = 0; word < width / 64; word++) {
+                long plane0 = frameBuffer.getWord(0, y, word);
+                long plane1 = frameBuffer.getWord(1, y, word);
+                long plane2 = frameBuffer.getWord(2, y, word);
+                long plane3 = frameBuffer.getWord(3, y, word);
+                boolean empty = (plane0 | plane1 | plane2 | plane3) == 0;
+
+                for (int bit = 0; bit < 64; bit++) {
+                    int index = y * width + word * 64 + bit;
+                    int shift = 63 - bit;
+                    int color = empty ? 0 : (int) (plane0 >>> shift & 1
+                            | (plane1 >>> shift & 1) << 1
+                            | (plane2 >>> shift & 1) << 2
+                            | (plane3 >>> shift & 1) << 3);
+
+                    if (color != 0) {
+                        intensity[index] = 1;
+                        lastColor[index] = palette[color];
+                        pixels[index] = palette[color];
+                        continue;
+                    }
+
+                    float value = (float) (intensity[index] * persistence);
+                    if (value < FADE_THRESHOLD) {
+                        value = 0;
+                    } else {
+                        stillFading = true;
+                    }
 
-                gc.fillRect(x * scale, y * scale, scale, scale);
+                    intensity[index] = value;
+                    pixels[index] = value == 0 ? bg : blend(lastColor[index], bg, value);
+                }
             }
         }
+
+        fading = stillFading;
+        image.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        present();
+
+        renderNanos.add(System.nanoTime() - start);
+        renderCount.increment();
     }
 
-    public int getPixel(int x, int y) {
-        return graphic[x][y];
+    //scales the used part of the image into the canvas, the remaining area is letterboxed
+    private void present() {
+        int sourceWidth = frameBuffer.getWidth();
+        int sourceHeight = frameBuffer.getHeight();
+        double width = getWidth();
+        double height = getHeight();
+
+        double scale = Math.min(width / sourceWidth, height / sourceHeight);
+        if (integerScaling && scale >= 1) {
+            scale = Math.floor(scale);
+        }
+
+        double imageWidth = sourceWidth * scale;
+        double imageHeight = sourceHeight * scale;
+
+        gc.setFill(background);
+        gc.fillRect(0, 0, width, height);
+        gc.drawImage(image, 0, 0, sourceWidth, sourceHeight,
+                Math.floor((width - imageWidth) / 2), Math.floor((height - imageHeight) / 2),
+                imageWidth, imageHeight);
+    }
+
+    private static int toArgb(Color color) {
+        return 0xFF000000
+                | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
+    }
+
+    private static int blend(int fg, int bg, float amount) {
+        int red = mix(fg >> 16 & 0xFF, bg >> 16 & 0xFF, amount);
+        int green = mix(fg >> 8 & 0xFF, bg >> 8 & 0xFF, amount);
+        int blue = mix(fg & 0xFF, bg & 0xFF, amount);
+
+        return 0xFF000000 | red << 16 | green << 8 | blue;
     }
 
-    public void setPixel(int x, int y) {
-        graphic[x][y] ^= 1;
+    private static int mix(int a, int b, float amount) {
+        return (int) (a * amount + b * (1 - amount));
     }
 }
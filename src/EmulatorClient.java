@@ -0,0 +1,152 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+//thin blocking client for the EmulatorServer, rebuilds the framebuffer from the row deltas
+public class EmulatorClient implements AutoCloseable {
+    private static final int WORDS = FrameBuffer.MAX_WIDTH / 64;
+
+    private final SocketChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(3);
+    private final ByteBuffer body = ByteBuffer.allocate(0x8000);
+    private final ByteBuffer key = ByteBuffer.allocate(2);
+
+    private final long[] planes = new long[FrameBuffer.PLANES * FrameBuffer.MAX_HEIGHT * WORDS];
+    private boolean hires = false;
+    private int frame = 0;
+    private long bytesReceived = 0;
+
+
+    public EmulatorClient(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8088;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+
+        try (EmulatorClient client = new EmulatorClient(host, port)) {
+            int updates = 0;
+            while (client.getFrame() < frames) {
+                client.readFrame();
+                ++updates;
+            }
+
+            System.out.println(client);
+            System.out.printf("%d updates, %d bytes%n", updates, client.getBytesReceived());
+        }
+    }
+
+    public void pressKey(int index) throws IOException {
+        sendKey(EmulatorServer.KEY_DOWN, index);
+    }
+
+    public void releaseKey(int index) throws IOException {
+        sendKey(EmulatorServer.KEY_UP, index);
+    }
+
+    private void sendKey(byte type, int index) throws IOException {
+        key.clear();
+        key.put(type).put((byte) index).flip();
+
+        while (key.hasRemaining()) {
+            channel.write(key);
+        }
+    }
+
+    //blocks until the next frame update was applied
+    public void readFrame() throws IOException {
+        header.clear();
+        readFully(header);
+
+        int length = header.getShort(1) & 0xFFFF;
+        body.clear().limit(length);
+        readFully(body);
+        bytesReceived += 3 + length;
+
+        frame = body.getInt();
+        hires = body.get() == 1;
+        int rows = body.getShort() & 0xFFFF;
+
+        for (int i = 0; i < rows; ++i) {
+            int plane = body.get();
+            int y = body.get();
+            int mask = body.getShort() & 0xFFFF;
+            int index = (plane * FrameBuffer.MAX_HEIGHT + y) * WORDS;
+
+            planes[index] ^= readWord(mask >> 8);
+            planes[index + 1] ^= readWord(mask & 0xFF);
+        }
+    }
+
+    private long readWord(int mask) {
+        long word = 0;
+
+        for (int i = 0; i < 8; ++i) {
+            if ((mask & 0x80 >> i) != 0) {
+                word |= (body.get() & 0xFFL) << (56 - i * 8);
+            }
+        }
+
+        return word;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+        buffer.flip();
+    }
+
+    public int getPixel(int x, int y) {
+        int pixel = 0;
+
+        for (int plane = 0; plane < FrameBuffer.PLANES; ++plane) {
+            long word = planes[(plane * FrameBuffer.MAX_HEIGHT + y) * WORDS + (x >> 6)];
+            pixel |= (int) (word >>> (63 - (x & 63)) & 1) << plane;
+        }
+
+        return pixel;
+    }
+
+    public int getWidth() {
+        return hires ? FrameBuffer.MAX_WIDTH : FrameBuffer.LORES_WIDTH;
+    }
+
+    public int getHeight() {
+        return hires ? FrameBuffer.MAX_HEIGHT : FrameBuffer.LORES_HEIGHT;
+    }
+
+    public int getFrame() {
+        return frame;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        for (int y = 0; y < getHeight(); ++y) {
+            for (int x = 0; x < getWidth(); ++x) {
+                builder.append(getPixel(x, y) != 0 ? '#' : '.');
+            }
+            builder.append('\n');
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,209 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+//the hot paths only update cheap counters, sample() turns them into the published values about once a second
+public class EmulatorMetrics implements EmulatorMetricsMBean {
+    private static final List<EmulatorMetrics> INSTANCES = new CopyOnWriteArrayList<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(0);
+
+    private final int id = NEXT_ID.getAndIncrement();
+    private final CPU cpu;
+    private final Display display;         //null when headless
+    private final FramePacer framePacer;   //null when headless
+
+    private final LatenessProbe cpuLateness;
+    private final LatenessProbe timerLateness;
+
+    private ObjectName name;
+
+    private long lastSampleNanos = System.nanoTime();
+    private long lastInstructions = 0;
+
+    private volatile double effectiveHz = 0;
+    private volatile double cpuLatenessAvg = 0;
+    private volatile double cpuLatenessMax = 0;
+    private volatile double timerLatenessAvg = 0;
+    private volatile double timerLatenessMax = 0;
+
+
+    public EmulatorMetrics(CPU cpu, Display display, FramePacer framePacer, long cpuPeriodNanos, long timerPeriodNanos) {
+        this.cpu = cpu;
+        this.display = display;
+        this.framePacer = framePacer;
+
+        cpuLateness = new LatenessProbe(cpuPeriodNanos);
+        timerLateness = new LatenessProbe(timerPeriodNanos);
+    }
+
+    public LatenessProbe getCpuLateness() {
+        return cpuLateness;
+    }
+
+    public LatenessProbe getTimerLateness() {
+        return timerLateness;
+    }
+
+    public void register() {
+        try {
+            name = new ObjectName("chip8:type=Emulator,name=emulator" + id);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+
+        INSTANCES.add(this);
+    }
+
+    public void unregister() {
+        INSTANCES.remove(this);
+
+        try {
+            if (name != null) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //only called by one thread at a time
+    public void sample() {
+        long now = System.nanoTime();
+        long instructions = cpu.getInstructionCount();
+
+        double seconds = (now - lastSampleNanos) / 1e9;
+        if (seconds > 0) {
+            effectiveHz = (instructions - lastInstructions) / seconds;
+        }
+        lastSampleNanos = now;
+        lastInstructions = instructions;
+
+        long[] cpuRuns = cpuLateness.drain();
+        cpuLatenessAvg = cpuRuns[0] == 0 ? 0 : cpuRuns[1] / (double) cpuRuns[0] / 1000;
+        cpuLatenessMax = cpuRuns[2] / 1000.0;
+
+        long[] timerRuns = timerLateness.drain();
+        timerLatenessAvg = timerRuns[0] == 0 ? 0 : timerRuns[1] / (double) timerRuns[0] / 1000;
+        timerLatenessMax = timerRuns[2] / 1000.0;
+    }
+
+    @Override
+    public long getInstructionsExecuted() {
+        return cpu.getInstructionCount();
+    }
+
+    @Override
+    public double getEffectiveHz() {
+        return effectiveHz;
+    }
+
+    @Override
+    public long getFramesPresented() {
+        return framePacer == null ? 0 : framePacer.getRenderedFrames();
+    }
+
+    @Override
+    public long getFramesSkipped() {
+        return framePacer == null ? 0 : framePacer.getSkippedFrames();
+    }
+
+    @Override
+    public double getCpuLatenessAvgMicros() {
+        return cpuLatenessAvg;
+    }
+
+    @Override
+    public double getCpuLatenessMaxMicros() {
+        return cpuLatenessMax;
+    }
+
+    @Override
+    public double getTimerLatenessAvgMicros() {
+        return timerLatenessAvg;
+    }
+
+    @Override
+    public double getTimerLatenessMaxMicros() {
+        return timerLatenessMax;
+    }
+
+    @Override
+    public long getUndefinedOpcodes() {
+        return cpu.getUndefinedOpcodeCount();
+    }
+
+    @Override
+    public double getRenderTimeTotalMillis() {
+        return display == null ? 0 : display.getRenderNanos() / 1e6;
+    }
+
+    @Override
+    public double getRenderTimeAvgMicros() {
+        if (display == null || display.getRenderCount() == 0) {
+            return 0;
+        }
+
+        return display.getRenderNanos() / (double) display.getRenderCount() / 1000;
+    }
+
+    @Override
+    public String getPc() {
+        return String.format("0x%04X", cpu.getPublishedPc());
+    }
+
+    @Override
+    public String getRomHash() {
+        return cpu.getRomHash();
+    }
+
+    //all registered instances in the prometheus text format
+    public static String prometheus() {
+        StringBuilder builder = new StringBuilder();
+
+        metric(builder, "chip8_instructions_total", "counter", "Instructions executed",
+                EmulatorMetrics::getInstructionsExecuted);
+        metric(builder, "chip8_effective_hz", "gauge", "Instructions per second over the last sample",
+                EmulatorMetrics::getEffectiveHz);
+        metric(builder, "chip8_frames_presented_total", "counter", "Frames rendered",
+                EmulatorMetrics::getFramesPresented);
+        metric(builder, "chip8_frames_skipped_total", "counter", "Frames dropped or skipped",
+                EmulatorMetrics::getFramesSkipped);
+        metric(builder, "chip8_cpu_lateness_avg_microseconds", "gauge", "Average start delay of the cpu loop",
+                EmulatorMetrics::getCpuLatenessAvgMicros);
+        metric(builder, "chip8_cpu_lateness_max_microseconds", "gauge", "Maximum start delay of the cpu loop",
+                EmulatorMetrics::getCpuLatenessMaxMicros);
+        metric(builder, "chip8_timer_lateness_avg_microseconds", "gauge", "Average start delay of the timer loop",
+                EmulatorMetrics::getTimerLatenessAvgMicros);
+        metric(builder, "chip8_timer_lateness_max_microseconds", "gauge", "Maximum start delay of the timer loop",
+                EmulatorMetrics::getTimerLatenessMaxMicros);
+        metric(builder, "chip8_undefined_opcodes_total", "counter", "Undefined opcodes executed",
+                EmulatorMetrics::getUndefinedOpcodes);
+        metric(builder, "chip8_render_seconds_total", "counter", "Time spent in Display.render",
+                m -> m.getRenderTimeTotalMillis() / 1000);
+        metric(builder, "chip8_pc", "gauge", "Program counter",
+                m -> m.cpu.getPublishedPc());
+
+        return builder.toString();
+    }
+
+    private static void metric(StringBuilder builder, String name, String type, String help,
+                               ToDoubleFunction<EmulatorMetrics> value) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+
+        for (EmulatorMetrics metrics : INSTANCES) {
+            builder.append(String.format(Locale.ROOT, "%s{instance=\"emulator%d\",rom_sha1=\"%s\"} %s\n",
+                    name, metrics.id, metrics.getRomHash(), format(value.applyAsDouble(metrics))));
+        }
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+}
@@ -0,0 +1,27 @@
+public interface EmulatorMetricsMBean {
+    long getInstructionsExecuted();
+
+    double getEffectiveHz();
+
+    long getFramesPresented();
+
+    long getFramesSkipped();
+
+    double getCpuLatenessAvgMicros();
+
+    double getCpuLatenessMaxMicros();
+
+    double getTimerLatenessAvgMicros();
+
+    double getTimerLatenessMaxMicros();
+
+    long getUndefinedOpcodes();
+
+    double getRenderTimeTotalMillis();
+
+    double getRenderTimeAvgMicros();
+
+    String getPc();
+
+    String getRomHash();
+}
@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+//hosts many headless sessions on a single selector thread, which also steps every session once per frame
+//client -> server: [type][key], type is KEY_DOWN or KEY_UP
+//server -> client: [FRAME][short length][int frame][byte hires][short rows] rows * [plane][y][short mask][bytes]
+//a static screen still gets an update without rows every 30 frames
+public class EmulatorServer {
+    public static final byte KEY_DOWN = 1;
+    public static final byte KEY_UP = 2;
+    public static final byte FRAME = 1;
+
+    private static final long FRAME_NANOS = 17_000_000L;
+
+    private final byte[] rom;
+    private final int cyclesPerFrame;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final List<ServerSession> sessions = new ArrayList<>();
+
+    private volatile boolean running = false;
+
+
+    public EmulatorServer(int port, byte[] rom, int cyclesPerFrame) throws IOException {
+        this.rom = rom;
+        this.cyclesPerFrame = cyclesPerFrame;
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: EmulatorServer <rom> [port] [speed]");
+            return;
+        }
+
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8088;
+        int speed = args.length > 2 ? Integer.parseInt(args[2]) : LaunchOptions.DEFAULT_SPEED;
+        EmulatorServer server = new EmulatorServer(port, Files.readAllBytes(Paths.get(args[0])),
+                Seeker.cyclesPerFrame(speed));
+
+        System.out.println("Listening on port " + server.getPort());
+        server.run();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public void run() throws IOException {
+        running = true;
+        long nextTick = System.nanoTime() + FRAME_NANOS;
+
+        while (running) {
+            //rounded up, so the last millisecond before a tick is not spent spinning on selectNow
+            long wait = (nextTick - System.nanoTime() + 999_999) / 1_000_000;
+            if (wait > 0) {
+                selector.select(wait);
+            } else {
+                selector.selectNow();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                handle(key);
+            }
+
+            long now = System.nanoTime();
+            if (now - nextTick >= 0) {
+                tick();
+
+                //drop the missed ticks instead of catching up
+                nextTick = Math.max(nextTick + FRAME_NANOS, now);
+            }
+        }
+
+        for (ServerSession session : sessions) {
+            session.close();
+        }
+        sessions.clear();
+        serverChannel.close();
+        selector.close();
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        ServerSession session = (ServerSession) key.attachment();
+        try {
+            if (key.isReadable()) {
+                session.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                session.flush();
+            }
+        } catch (IOException e) {
+            close(session);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            ServerSession session = new ServerSession(channel, key, rom);
+            key.attach(session);
+            sessions.add(session);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void tick() {
+        for (int i = sessions.size() - 1; i >= 0; --i) {
+            ServerSession session = sessions.get(i);
+
+            //a crashing rom only ends its own session
+            try {
+                session.step(cyclesPerFrame);
+                session.flush();
+            } catch (IOException | RuntimeException e) {
+                close(session);
+            }
+        }
+    }
+
+    private void close(ServerSession session) {
+        session.close();
+        sessions.remove(session);
+    }
+}
@@ -0,0 +1,270 @@
+import java.util.Arrays;
+
+//up to 4 bitplanes, every row of a plane is packed into two longs, the msb is the leftmost pixel
+public class FrameBuffer {
+    public static final int LORES_WIDTH = 64;
+    public static final int LORES_HEIGHT = 32;
+    public static final int MAX_WIDTH = 128;
+    public static final int MAX_HEIGHT = 64;
+    public static final int PLANES = 4;
+    private static final int WORDS = MAX_WIDTH / 64;
+
+    private final long[][] planes = new long[PLANES][MAX_HEIGHT * WORDS];
+
+    private boolean hires = false;
+    private int selectedPlanes = 0x1;
+
+    //changes whenever a pixel changes, so renderers can skip unchanged frames
+    private volatile int version = 0;
+
+    //flags returned by drawRow
+    public static final int CHANGED = 1;
+    public static final int COLLISION = 2;
+
+
+    public int getWidth() {
+        return hires ? MAX_WIDTH : LORES_WIDTH;
+    }
+
+    public int getHeight() {
+        return hires ? MAX_HEIGHT : LORES_HEIGHT;
+    }
+
+    public boolean isHires() {
+        return hires;
+    }
+
+    //switching the resolution clears the whole screen
+    public void setHires(boolean hires) {
+        this.hires = hires;
+        clearAll();
+    }
+
+    public int getSelectedPlanes() {
+        return selectedPlanes;
+    }
+
+    public void setSelectedPlanes(int selectedPlanes) {
+        this.selectedPlanes = selectedPlanes & ((1 << PLANES) - 1);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    //called once after a sprite changed some rows, drawRow does not bump the version itself
+    public void markChanged() {
+        ++version;
+    }
+
+    //clears the selected planes
+    public void clear() {
+        boolean changed = false;
+
+        for (int plane = 0; plane < PLANES; ++plane) {
+            if ((selectedPlanes & 1 << plane) == 0) {
+                continue;
+            }
+
+            for (long word : planes[plane]) {
+                changed |= word != 0;
+            }
+            Arrays.fill(planes[plane], 0);
+        }
+
+        if (changed) {
+            ++version;
+        }
+    }
+
+    public void clearAll() {
+        for (long[] plane : planes) {
+            Arrays.fill(plane, 0);
+        }
+
+        ++version;
+    }
+
+    //back to a single plane in lores
+    public void reset() {
+        selectedPlanes = 0x1;
+        setHires(false);
+    }
+
+    //the bits of all planes at this position, plane 0 is bit 0
+    public int getPixel(int x, int y) {
+        int word = y * WORDS + (x >> 6);
+        int shift = 63 - (x & 63);
+        int pixel = 0;
+
+        for (int plane = 0; plane < PLANES; ++plane) {
+            pixel |= (int) (planes[plane][word] >>> shift & 1) << plane;
+        }
+
+        return pixel;
+    }
+
+    public long getWord(int plane, int y, int word) {
+        return planes[plane][y * WORDS + word];
+    }
+
+    //xors one sprite row of the given bit width into a plane, returns true on collision
+    //the position has to be inside the screen already, everything past the edges is clipped
+    public int drawRow(int plane, int x, int y, int bits, int width) {
+        if (y >= getHeight()) {
+            return 0;
+        }
+
+        //place the sprite bits in the row, lores only uses the first word
+        long value = bits & 0xFFFFFFFFL;
+        long high;
+        long low;
+        if (hires) {
+            int shift = MAX_WIDTH - width - x;
+            if (shift < 0) {
+                high = 0;
+                low = value >>> -shift;
+            } else if (shift >= 64) {
+                high = value << (shift - 64);
+                low = 0;
+            } else {
+                high = shift == 0 ? 0 : value >>> (64 - shift);
+                low = value << shift;
+            }
+        } else {
+            int shift = LORES_WIDTH - width - x;
+            high = shift < 0 ? value >>> -shift : value << shift;
+            low = 0;
+        }
+
+        long[] rows = planes[plane];
+        int index = y * WORDS;
+        if ((high | low) == 0) {
+            return 0;
+        }
+
+        boolean collision = (rows[index] & high) != 0 || (rows[index + 1] & low) != 0;
+
+        rows[index] ^= high;
+        rows[index + 1] ^= low;
+
+        return collision ? CHANGED | COLLISION : CHANGED;
+    }
+
+    public void scrollDown(int amount) {
+        int height = getHeight();
+        boolean changed = false;
+
+        for (int plane = 0; plane < PLANES; ++plane) {
+            if ((selectedPlanes & 1 << plane) == 0) {
+                continue;
+            }
+
+            long[] rows = planes[plane];
+            for (int y = height - 1; y >= 0; --y) {
+                int from = y - amount;
+                long high = from >= 0 ? rows[from * WORDS] : 0;
+                long low = from >= 0 ? rows[from * WORDS + 1] : 0;
+                changed |= setRow(rows, y, high, low);
+            }
+        }
+
+        if (changed) {
+            ++version;
+        }
+    }
+
+    public void scrollUp(int amount) {
+        int height = getHeight();
+        boolean changed = false;
+
+        for (int plane = 0; plane < PLANES; ++plane) {
+            if ((selectedPlanes & 1 << plane) == 0) {
+                continue;
+            }
+
+            long[] rows = planes[plane];
+            for (int y = 0; y < height; ++y) {
+                int from = y + amount;
+                long high = from < height ? rows[from * WORDS] : 0;
+                long low = from < height ? rows[from * WORDS + 1] : 0;
+                changed |= setRow(rows, y, high, low);
+            }
+        }
+
+        if (changed) {
+            ++version;
+        }
+    }
+
+    public void scrollRight(int amount) {
+        boolean changed = false;
+
+        for (int plane = 0; plane < PLANES; ++plane) {
+            if ((selectedPlanes & 1 << plane) == 0) {
+                continue;
+            }
+
+            long[] rows = planes[plane];
+            for (int y = 0; y < getHeight(); ++y) {
+                long high = rows[y * WORDS];
+                long low = rows[y * WORDS + 1];
+
+                changed |= setRow(rows, y, high >>> amount, hires ? low >>> amount | high << (64 - amount) : 0);
+            }
+        }
+
+        if (changed) {
+            ++version;
+        }
+    }
+
+    public void scrollLeft(int amount) {
+        boolean changed = false;
+
+        for (int plane = 0; plane < PLANES; ++plane) {
+            if ((selectedPlanes & 1 << plane) == 0) {
+                continue;
+            }
+
+            long[] rows = planes[plane];
+            for (int y = 0; y < getHeight(); ++y) {
+                long high = rows[y * WORDS];
+                long low = rows[y * WORDS + 1];
+
+                changed |= setRow(rows, y, high << amount | low >>> (64 - amount), low << amount);
+            }
+        }
+
+        if (changed) {
+            ++version;
+        }
+    }
+
+    //returns whether the row changed
+    private static boolean setRow(long[] rows, int y, long high, long low) {
+        int index = y * WORDS;
+        boolean changed = rows[index] != high || rows[index + 1] != low;
+
+        rows[index] = high;
+        rows[index + 1] = low;
+
+        return changed;
+    }
+
+    public FrameBuffer copy() {
+        FrameBuffer temp = new FrameBuffer();
+        temp.restore(this);
+        return temp;
+    }
+
+    public void restore(FrameBuffer other) {
+        for (int plane = 0; plane < PLANES; ++plane) {
+            System.arraycopy(other.planes[plane], 0, planes[plane], 0, planes[plane].length);
+        }
+
+        hires = other.hires;
+        selectedPlanes = other.selectedPlanes;
+        ++version;
+    }
+}
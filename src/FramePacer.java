@@ -0,0 +1,89 @@
+import javafx.application.Platform;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//coalesces render requests, so at most one render is queued on the FX thread at a time
+public class FramePacer {
+    private static final long FRAME_NANOS = 17_000_000L;
+    private static final int MAX_SKIP = 4;
+
+    private final Display display;
+    private final FrameBuffer frameBuffer;
+
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private final AtomicInteger skipBudget = new AtomicInteger(0);
+    private final AtomicLong renderedFrames = new AtomicLong(0);
+    private final AtomicLong skippedFrames = new AtomicLong(0);
+
+    private volatile int renderedVersion = -1;
+    private volatile boolean adaptive = false;
+
+
+    public FramePacer(Display display, FrameBuffer frameBuffer) {
+        this.display = display;
+        this.frameBuffer = frameBuffer;
+    }
+
+    //called once per frame from the timer thread
+    public void frame() {
+        if (frameBuffer.getVersion() == renderedVersion && !display.isFading()) {
+            return;
+        }
+
+        //adaptive skipping after a slow render
+        if (skipBudget.get() > 0) {
+            skipBudget.decrementAndGet();
+            skippedFrames.incrementAndGet();
+            return;
+        }
+
+        //the FX thread is still busy with the last frame, drop this one
+        if (!pending.compareAndSet(false, true)) {
+            skippedFrames.incrementAndGet();
+            return;
+        }
+
+        Platform.runLater(this::render);
+    }
+
+    private void render() {
+        long start = System.nanoTime();
+
+        //a failed render must not block every later frame
+        try {
+            renderedVersion = frameBuffer.getVersion();
+            display.render();
+
+            long duration = System.nanoTime() - start;
+            renderedFrames.incrementAndGet();
+
+            if (adaptive) {
+                skipBudget.set((int) Math.min(MAX_SKIP, duration / FRAME_NANOS));
+            }
+        } finally {
+            pending.set(false);
+        }
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+
+        if (!adaptive) {
+            skipBudget.set(0);
+        }
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public long getRenderedFrames() {
+        return renderedFrames.get();
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+//measures how late the runs of a fixed delay loop start, the delay counts from the end of the previous run
+//tick() and finish() are only called by the loop, whose runs never overlap, so they use plain fields
+//and only publish them to the shared counters every PUBLISH_NANOS
+public class LatenessProbe {
+    private static final long PUBLISH_NANOS = 100_000_000L;
+
+    //plain, only changed together with a restart of the loop, which publishes it
+    private long periodNanos;
+
+    //set by restart(), the only write from outside the loop
+    private volatile boolean restarted = true;
+
+    //confined to the loop
+    private long lastEnd = 0;
+    private long lastPublish = 0;
+    private long pendingRuns = 0;
+    private long pendingLateNanos = 0;
+    private long pendingMaxLateNanos = 0;
+
+    //shared with drain()
+    private final LongAdder lateNanos = new LongAdder();
+    private final LongAdder runs = new LongAdder();
+    private final LongAccumulator maxLateNanos = new LongAccumulator(Math::max, 0);
+
+
+    public LatenessProbe(long periodNanos) {
+        this.periodNanos = periodNanos;
+    }
+
+    //the loop has to be restarted afterwards
+    public void setPeriodNanos(long periodNanos) {
+        this.periodNanos = periodNanos;
+    }
+
+    //called at the start of every run of the loop
+    public void tick() {
+        //the end of a run before the restart is no reference
+        if (restarted) {
+            restarted = false;
+            return;
+        }
+
+        long now = System.nanoTime();
+        long late = Math.max(0, now - lastEnd - periodNanos);
+        ++pendingRuns;
+        pendingLateNanos += late;
+        pendingMaxLateNanos = Math.max(pendingMaxLateNanos, late);
+
+        if (now - lastPublish >= PUBLISH_NANOS) {
+            publish();
+            lastPublish = now;
+        }
+    }
+
+    //called at the end of every run, so the run time of the task itself is no lateness
+    public void finish() {
+        lastEnd = System.nanoTime();
+    }
+
+    //the loop was restarted, the pause is no lateness
+    public void restart() {
+        restarted = true;
+    }
+
+    private void publish() {
+        runs.add(pendingRuns);
+        lateNanos.add(pendingLateNanos);
+        maxLateNanos.accumulate(pendingMaxLateNanos);
+
+        pendingRuns = 0;
+        pendingLateNanos = 0;
+        pendingMaxLateNanos = 0;
+    }
+
+    //returns {runs, total lateness, max lateness} published since the last call
+    public long[] drain() {
+        return new long[]{runs.sumThenReset(), lateNanos.sumThenReset(), maxLateNanos.getThenReset()};
+    }
+}
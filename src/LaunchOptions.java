@@ -0,0 +1,112 @@
+import java.util.List;
+
+//command line options shared by the Launcher and Main
+//usage: [--speed <hz>] [--quirk shift,loadstore,jump] [--headless] [--frames <n>] [--rom] <rom>
+public class LaunchOptions {
+    public static final int DEFAULT_SPEED = 500;
+    public static final int MAX_SPEED = 1_000_000;  //the cpu loop is scheduled once per instruction
+    public static final int DEFAULT_FRAMES = 60;
+
+    private String rom = null;
+    private int speed = DEFAULT_SPEED;
+    private boolean shiftQuirk = false;
+    private boolean loadStoreQuirk = false;
+    private boolean jumpQuirk = false;
+    private boolean headless = false;
+    private int frames = DEFAULT_FRAMES;
+
+
+    public static LaunchOptions parse(List<String> args) {
+        LaunchOptions options = new LaunchOptions();
+
+        for (int i = 0; i < args.size(); ++i) {
+            String arg = args.get(i);
+
+            switch (arg) {
+                case "--rom":
+                    options.rom = value(args, ++i, arg);
+                    break;
+                case "--speed":
+                    options.speed = positive(value(args, ++i, arg), arg, MAX_SPEED);
+                    break;
+                case "--quirk":
+                    for (String quirk : value(args, ++i, arg).split(",")) {
+                        options.setQuirk(quirk.trim());
+                    }
+                    break;
+                case "--headless":
+                    options.headless = true;
+                    break;
+                case "--frames":
+                    options.frames = positive(value(args, ++i, arg), arg, Integer.MAX_VALUE);
+                    break;
+                default:
+                    if (arg.startsWith("--") || options.rom != null) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    options.rom = arg;
+            }
+        }
+
+        return options;
+    }
+
+    private static String value(List<String> args, int index, String option) {
+        if (index >= args.size()) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+
+        return args.get(index);
+    }
+
+    private static int positive(String value, String option, int max) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0 && number <= max) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            //reported below
+        }
+
+        throw new IllegalArgumentException(option + " needs a number from 1 to " + max + ": " + value);
+    }
+
+    private void setQuirk(String quirk) {
+        switch (quirk) {
+            case "shift":
+                shiftQuirk = true;
+                break;
+            case "loadstore":
+                loadStoreQuirk = true;
+                break;
+            case "jump":
+                jumpQuirk = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown quirk: " + quirk);
+        }
+    }
+
+    public void applyQuirks(CPU cpu) {
+        cpu.setShiftQuirk(shiftQuirk);
+        cpu.setLoadStoreQuirk(loadStoreQuirk);
+        cpu.setJumpQuirk(jumpQuirk);
+    }
+
+    public String getRom() {
+        return rom;
+    }
+
+    public int getSpeed() {
+        return speed;
+    }
+
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+}
@@ -0,0 +1,83 @@
+import javafx.application.Application;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+//entry point, only touches javafx when the gui is actually started
+//also works with javafx on the plain classpath, because this class does not extend Application
+public class Launcher {
+    private static final long LAUNCHED = System.nanoTime();
+
+
+    private Launcher() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        LaunchOptions options;
+        try {
+            options = LaunchOptions.parse(Arrays.asList(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: Launcher [--speed <hz>] [--quirk shift,loadstore,jump] "
+                    + "[--headless] [--frames <n>] [--rom] <rom>");
+            System.exit(2);
+            return;
+        }
+
+        if (options.isHeadless()) {
+            runHeadless(options);
+        } else {
+            Application.launch(Main.class, args);
+        }
+    }
+
+    //runs the rom unthrottled for the given amount of frames and prints the final screen
+    private static void runHeadless(LaunchOptions options) throws IOException {
+        if (options.getRom() == null) {
+            System.err.println("Headless mode needs a rom");
+            System.exit(2);
+            return;
+        }
+
+        FrameBuffer frameBuffer = new FrameBuffer();
+        CPU cpu = new CPU(frameBuffer, new Keyboard());
+        cpu.setMuted(true);
+        options.applyQuirks(cpu);
+        cpu.loadRom(Files.readAllBytes(Paths.get(options.getRom())));
+
+        int cyclesPerFrame = Seeker.cyclesPerFrame(options.getSpeed());
+        long start = System.nanoTime();
+        long firstFrame = 0;
+
+        for (int frame = 0; frame < options.getFrames(); ++frame) {
+            for (int i = 0; i < cyclesPerFrame; ++i) {
+                cpu.cycle();
+            }
+            cpu.updateTimers();
+
+            if (frame == 0) {
+                firstFrame = System.nanoTime();
+            }
+        }
+        long end = System.nanoTime();
+
+        System.out.print(screen(frameBuffer));
+        System.out.printf("%d frames, %d instructions in %.2f ms, first frame %.2f ms after launch%n",
+                options.getFrames(), cpu.getCycles(), (end - start) / 1e6, (firstFrame - LAUNCHED) / 1e6);
+    }
+
+    private static String screen(FrameBuffer frameBuffer) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int y = 0; y < frameBuffer.getHeight(); ++y) {
+            for (int x = 0; x < frameBuffer.getWidth(); ++x) {
+                builder.append(frameBuffer.getPixel(x, y) != 0 ? '#' : '.');
+            }
+            builder.append('\n');
+        }
+
+        return builder.toString();
+    }
+}
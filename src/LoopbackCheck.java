@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+//runs an EmulatorServer and an EmulatorClient over loopback and compares the client's screen
+//with a headless cpu stepped the same amount of frames, exits with 1 on a mismatch
+//the rom must not read keys or use random numbers, like roms/IBM
+public class LoopbackCheck {
+    private LoopbackCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        byte[] rom = Files.readAllBytes(Paths.get(args.length > 0 ? args[0] : "roms/IBM"));
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 120;
+
+        int cyclesPerFrame = Seeker.cyclesPerFrame(LaunchOptions.DEFAULT_SPEED);
+
+        EmulatorServer server = new EmulatorServer(0, rom, cyclesPerFrame);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "server");
+        serverThread.start();
+
+        boolean matches;
+        int frame;
+        try (EmulatorClient client = new EmulatorClient("localhost", server.getPort())) {
+            //the session has to survive key events, the rom ignores them
+            client.pressKey(5);
+            client.releaseKey(5);
+
+            while (client.getFrame() < frames) {
+                client.readFrame();
+            }
+
+            frame = client.getFrame();
+            matches = matches(client, reference(rom, frame, cyclesPerFrame));
+        } finally {
+            server.stop();
+            serverThread.join();
+        }
+
+        System.out.println((matches ? "OK" : "MISMATCH") + " at frame " + frame);
+        if (!matches) {
+            System.exit(1);
+        }
+    }
+
+    private static FrameBuffer reference(byte[] rom, int frames, int cyclesPerFrame) {
+        FrameBuffer frameBuffer = new FrameBuffer();
+        CPU cpu = new CPU(frameBuffer, new Keyboard());
+        cpu.setMuted(true);
+        cpu.loadRom(rom);
+
+        for (int frame = 0; frame < frames; ++frame) {
+            for (int i = 0; i < cyclesPerFrame; ++i) {
+                cpu.cycle();
+            }
+            cpu.updateTimers();
+        }
+
+        return frameBuffer;
+    }
+
+    private static boolean matches(EmulatorClient client, FrameBuffer frameBuffer) {
+        if (client.getWidth() != frameBuffer.getWidth() || client.getHeight() != frameBuffer.getHeight()) {
+            return false;
+        }
+
+        for (int y = 0; y < frameBuffer.getHeight(); ++y) {
+            for (int x = 0; x < frameBuffer.getWidth(); ++x) {
+                if (client.getPixel(x, y) != frameBuffer.getPixel(x, y)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+}
@@ -4,12 +4,19 @@ import javafx.scene.Scene;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.RadioMenuItem;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.paint.Color;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -21,12 +28,23 @@ public class Main extends Application {
 
     private CPU cpu;
     private Display display;
+    private FramePacer framePacer;
+    private EmulatorMetrics metrics;
+    private MetricsHttpServer metricsServer;
     private Keyboard keyboard;
+    private Seeker seeker;
+    private volatile Debugger debugger;
+    private MemoryProfiler profiler;
+    private String romName = "";
+    private Stage debuggerStage;
 
     private final ScheduledExecutorService threadPool = Executors.newScheduledThreadPool(2);
     private ScheduledFuture<?> cpuThread;
     private ScheduledFuture<?> displayThread;
+    private final Object cpuLock = new Object();    //held by every loop run and every change of the cpu state
+    private int generation = 0;     //FX thread only, a seek only restarts the loops if nothing else did meanwhile
 
+    private long cpuPeriodNanos;
     private boolean debug = false;
 
 
@@ -37,6 +55,8 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) {
         stage = primaryStage;
+        LaunchOptions options = LaunchOptions.parse(getParameters().getRaw());
+        cpuPeriodNanos = TimeUnit.SECONDS.toNanos(1) / options.getSpeed();
 
         BorderPane root = new BorderPane();
         Scene scene = new Scene(root, 800, 450);
@@ -46,20 +66,54 @@ public class Main extends Application {
         MenuItem loadRomItem = new MenuItem("Load rom");
         MenuItem resetItem = new MenuItem("Reset");
         MenuItem stopItem = new MenuItem("Stop");
-        fileMenu.getItems().addAll(loadRomItem, resetItem, stopItem);
+        MenuItem seekItem = new MenuItem("Seek to frame");
+        fileMenu.getItems().addAll(loadRomItem, resetItem, stopItem, seekItem);
 
         Menu optionMenu = new Menu("Options");
         MenuItem cpuSpeedItem = new MenuItem("Change CPU speed");
         MenuItem debugTrueItem = new MenuItem("Enable debug");
         MenuItem debugFalseItem = new MenuItem("Disable debug");
-        optionMenu.getItems().addAll(cpuSpeedItem, debugTrueItem, debugFalseItem);
-
-        MenuBar menuBar = new MenuBar(fileMenu, optionMenu);
+        MenuItem debuggerItem = new MenuItem("Open debugger");
+        MenuItem profileStartItem = new MenuItem("Start memory profiling");
+        MenuItem profileStopItem = new MenuItem("Stop memory profiling");
+        MenuItem profileExportItem = new MenuItem("Export memory profile");
+        MenuItem frameSkipItem = new MenuItem("Toggle adaptive frame skip");
+        optionMenu.getItems().addAll(cpuSpeedItem, debugTrueItem, debugFalseItem, debuggerItem,
+                profileStartItem, profileStopItem, profileExportItem, frameSkipItem);
+
+        Menu viewMenu = new Menu("View");
+        ToggleGroup colorGroup = new ToggleGroup();
+        RadioMenuItem whiteItem = new RadioMenuItem("White on black");
+        RadioMenuItem greenItem = new RadioMenuItem("Green phosphor");
+        RadioMenuItem amberItem = new RadioMenuItem("Amber");
+        whiteItem.setToggleGroup(colorGroup);
+        greenItem.setToggleGroup(colorGroup);
+        amberItem.setToggleGroup(colorGroup);
+        whiteItem.setSelected(true);
+        MenuItem persistenceItem = new MenuItem("Toggle phosphor persistence");
+        MenuItem integerScalingItem = new MenuItem("Toggle integer scaling");
+        viewMenu.getItems().addAll(whiteItem, greenItem, amberItem, persistenceItem, integerScalingItem);
+
+        MenuBar menuBar = new MenuBar(fileMenu, optionMenu, viewMenu);
 
         //Emulator
-        display = new Display(800, 400);
+        FrameBuffer frameBuffer = new FrameBuffer();
+        display = new Display(frameBuffer, 800, 400);
+        framePacer = new FramePacer(display, frameBuffer);
         keyboard = new Keyboard();
-        cpu = new CPU(display, keyboard);
+        cpu = new CPU(frameBuffer, keyboard);
+        options.applyQuirks(cpu);
+        seeker = new Seeker(cpu, Seeker.cyclesPerFrame(options.getSpeed()));
+
+        //Metrics, registering with the platform mbean server is slow, so it is kept off the startup path
+        //the prometheus endpoint is only started if a port is configured
+        metrics = new EmulatorMetrics(cpu, display, framePacer,
+                cpuPeriodNanos, TimeUnit.MILLISECONDS.toNanos(17));
+        threadPool.execute(() -> {
+            metrics.register();
+            startMetricsServer();
+        });
+        threadPool.scheduleAtFixedRate(metrics::sample, 1, 1, TimeUnit.SECONDS);
 
         //Keyboard handler
         scene.setOnKeyPressed(event -> keyboard.pressKey(event.getCode()));
@@ -70,16 +124,32 @@ public class Main extends Application {
         root.setCenter(display);
         primaryStage.setScene(scene);
         primaryStage.setTitle("CHIP-8");
-        primaryStage.setResizable(false);
+        primaryStage.setResizable(true);
         primaryStage.show();
 
         //Bind MenuItems
         loadRomItem.setOnAction(event -> loadRom());
         resetItem.setOnAction(event -> reset());
         stopItem.setOnAction(event -> stopEmulation());
+        seekItem.setOnAction(event -> seek());
         cpuSpeedItem.setOnAction(event -> changeCpuSpeed());
         debugTrueItem.setOnAction(event -> debug = true);
         debugFalseItem.setOnAction(event -> debug = false);
+        debuggerItem.setOnAction(event -> openDebugger());
+        profileStartItem.setOnAction(event -> startProfiling());
+        profileStopItem.setOnAction(event -> stopProfiling());
+        profileExportItem.setOnAction(event -> exportProfile());
+        frameSkipItem.setOnAction(event -> framePacer.setAdaptive(!framePacer.isAdaptive()));
+        whiteItem.setOnAction(event -> display.setColors(Color.WHITE, Color.BLACK));
+        greenItem.setOnAction(event -> display.setColors(Color.rgb(0x33, 0xFF, 0x66), Color.rgb(0x00, 0x1A, 0x08)));
+        amberItem.setOnAction(event -> display.setColors(Color.rgb(0xFF, 0xB0, 0x00), Color.rgb(0x1A, 0x0F, 0x00)));
+        persistenceItem.setOnAction(event -> display.setPersistence(display.getPersistence() == 0 ? 0.6 : 0));
+        integerScalingItem.setOnAction(event -> display.setIntegerScaling(!display.isIntegerScaling()));
+
+        //a rom from the command line is started right away
+        if (options.getRom() != null) {
+            loadRom(new File(options.getRom()));
+        }
     }
 
     private void loadRom() {
@@ -91,56 +161,226 @@ public class Main extends Application {
             return;
         }
 
+        loadRom(rom);
+    }
+
+    private void loadRom(File rom) {
         stopEmulation();
 
-        cpu.loadRom(rom.getPath());
+        synchronized (cpuLock) {
+            cpu.loadRom(rom.getPath());
+            seeker.reset();
+            romName = rom.getName();
+
+            if (profiler != null) {
+                profiler.reset();
+            }
+        }
 
         startEmulation();
     }
 
     private void startEmulation() {
-        cpuThread = threadPool.scheduleWithFixedDelay(() -> {
-            cpu.cycle();
-
-            if (debug) {
-                cpu.debug();
-            }
-        }, 2, 2, TimeUnit.MILLISECONDS);
+        cpuThread = scheduleCpuThread();
 
+        metrics.getTimerLateness().restart();
         displayThread = threadPool.scheduleWithFixedDelay(() -> {
-            cpu.updateTimers();
-            if (cpu.isDrawFlag()) {
-                Platform.runLater(() -> {
-                    display.render();
-                    cpu.setDrawFlag(false);
-                });
+            metrics.getTimerLateness().tick();
+
+            synchronized (cpuLock) {
+                if (debugger == null || !debugger.isPaused()) {
+                    cpu.updateTimers();
+                }
             }
+            framePacer.frame();
+
+            metrics.getTimerLateness().finish();
         }, 17, 17, TimeUnit.MILLISECONDS);
     }
 
+    //the checking loop is only swapped in while the debugger is armed
+    private ScheduledFuture<?> scheduleCpuThread() {
+        LatenessProbe lateness = metrics.getCpuLateness();
+        lateness.restart();
+
+        if (debugger != null && debugger.isArmed()) {
+            debugger.rearm();
+
+            return threadPool.scheduleWithFixedDelay(() -> {
+                lateness.tick();
+
+                synchronized (cpuLock) {
+                    debugger.cycle();
+
+                    if (debug) {
+                        cpu.debug();
+                    }
+                }
+
+                lateness.finish();
+            }, cpuPeriodNanos, cpuPeriodNanos, TimeUnit.NANOSECONDS);
+        }
+
+        return threadPool.scheduleWithFixedDelay(() -> {
+            lateness.tick();
+
+            synchronized (cpuLock) {
+                cpu.cycle();
+
+                if (debug) {
+                    cpu.debug();
+                }
+            }
+
+            lateness.finish();
+        }, cpuPeriodNanos, cpuPeriodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void restartCpuThread() {
+        if (cpuThread == null || cpuThread.isCancelled() || !cpu.isRunning()) {
+            return;
+        }
+
+        cpuThread.cancel(false);
+        cpuThread = scheduleCpuThread();
+    }
+
+    //the debugger only exists once it was opened, until then the plain cpu loop runs
+    private void openDebugger() {
+        if (debugger == null) {
+            debugger = new Debugger(cpu);
+            debugger.setOnArmedChanged(this::restartCpuThread);
+        }
+
+        if (debuggerStage == null) {
+            debuggerStage = new Stage();
+            debuggerStage.setScene(new Scene(new DebuggerView(cpu, debugger), 800, 500));
+            debuggerStage.setTitle("CHIP-8 Debugger");
+        }
+
+        debuggerStage.show();
+        debuggerStage.toFront();
+    }
+
+    private void startProfiling() {
+        if (profiler == null) {
+            profiler = new MemoryProfiler();
+        }
+
+        cpu.getMemory().removeObserver(profiler);
+        cpu.getMemory().addObserver(profiler);
+        restartCpuThread();
+    }
+
+    //keeps the counters, so they can still be exported
+    private void stopProfiling() {
+        if (profiler != null) {
+            cpu.getMemory().removeObserver(profiler);
+            restartCpuThread();
+        }
+    }
+
+    private void exportProfile() {
+        if (profiler == null)
+            return;
+
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setInitialDirectory(new File(System.getProperty("user.dir")));
+        File directory = directoryChooser.showDialog(stage);
+
+        if (directory == null) {
+            return;
+        }
+
+        //the counters are plain ints written by the cpu thread
+        synchronized (cpuLock) {
+            try {
+                profiler.exportHeatmap(directory.toPath().resolve(romName + "-heatmap.png"));
+                profiler.exportReport(directory.toPath().resolve(romName + "-memory.json"), romName);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     private void reset() {
         if (!cpu.isRunning())
             return;
 
+        ++generation;
         if (cpuThread != null) {
             cpuThread.cancel(true);
             displayThread.cancel(true);
         }
 
-        cpu.softReset();
+        //waits for a running cycle or seek
+        synchronized (cpuLock) {
+            cpu.softReset();
+            seeker.reset();
+        }
         startEmulation();
     }
 
+    private void seek() {
+        if (!cpu.isRunning())
+            return;
+
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(cpu.getFrames()));
+        dialog.setTitle("Seek");
+        dialog.setHeaderText("Frame to seek to");
+        Optional<String> input = dialog.showAndWait();
+
+        long frame;
+        try {
+            frame = Long.parseLong(input.orElse("").trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        if (frame < 0) {
+            return;
+        }
+
+        int seekGeneration = ++generation;
+        if (cpuThread != null) {
+            cpuThread.cancel(false);
+            displayThread.cancel(false);
+        }
+
+        //seeking runs headless, the display is only rendered once the target is reached
+        threadPool.execute(() -> {
+            try {
+                //waits for a run of the cancelled loops that is still in progress
+                synchronized (cpuLock) {
+                    seeker.seekToFrame(frame);
+                }
+            } finally {
+                Platform.runLater(() -> {
+                    //a reset, stop or newer seek already took over the loops
+                    if (seekGeneration != generation) {
+                        return;
+                    }
+
+                    display.render();
+                    startEmulation();
+                });
+            }
+        });
+    }
+
     private void stopEmulation() {
         if (!cpu.isRunning())
             return;
 
+        ++generation;
         if (cpuThread != null) {
             cpuThread.cancel(true);
             displayThread.cancel(true);
         }
 
-        cpu.hardReset();
+        synchronized (cpuLock) {
+            cpu.hardReset();
+        }
         display.render();
     }
 
@@ -149,12 +389,54 @@ public class Main extends Application {
     }
 
     private void changeCpuSpeed() {
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(TimeUnit.SECONDS.toNanos(1) / cpuPeriodNanos));
+        dialog.setTitle("CPU speed");
+        dialog.setHeaderText("Instructions per second");
+        Optional<String> input = dialog.showAndWait();
+
+        int speed;
+        try {
+            speed = Integer.parseInt(input.orElse("").trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
 
+        if (speed <= 0 || speed > LaunchOptions.MAX_SPEED) {
+            return;
+        }
+
+        //seeks replay the frames with the same amount of cycles as the live loops
+        synchronized (cpuLock) {
+            seeker.setCyclesPerFrame(Seeker.cyclesPerFrame(speed));
+        }
+
+        cpuPeriodNanos = TimeUnit.SECONDS.toNanos(1) / speed;
+        metrics.getCpuLateness().setPeriodNanos(cpuPeriodNanos);
+        restartCpuThread();
+    }
+
+    private void startMetricsServer() {
+        Integer port = Integer.getInteger("chip8.metrics.port");
+        if (port == null) {
+            return;
+        }
+
+        try {
+            metricsServer = new MetricsHttpServer(port);
+            metricsServer.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     public void stop() {
         stopEmulation();
         stopPool();
+
+        metrics.unregister();
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
     }
 
 }
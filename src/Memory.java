@@ -1,44 +1,107 @@
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class Memory {
-    private final int[] memory;
-    private static final int MEMORY_SIZE = 0x1000;
+    private final byte[] memory;
+    public static final int MEMORY_SIZE = 0x10000;
+    private static final int ADDRESS_MASK = MEMORY_SIZE - 1;
+
+    //copy on write, so the hot path only checks the length of an empty array without observers
+    //not volatile, Main restarts the cpu loop after every change, which publishes the new array
+    private MemoryObserver[] observers = new MemoryObserver[0];
 
 
     public Memory() {
-        memory = new int[0x1000];  //4096
+        memory = new byte[MEMORY_SIZE];  //65536, XO-CHIP
     }
 
     public int get(int pos) {
+        pos &= ADDRESS_MASK;
+
+        for (MemoryObserver observer : observers) {
+            observer.onRead(pos);
+        }
+
         return memory[pos] & 0xFF;
     }
 
+    //reads the opcode at pos, observers see an execution instead of two reads
+    public int fetch(int pos) {
+        pos &= ADDRESS_MASK;
+
+        for (MemoryObserver observer : observers) {
+            observer.onExecute(pos);
+        }
+
+        return (memory[pos] & 0xFF) << 8 | memory[(pos + 1) & ADDRESS_MASK] & 0xFF;
+    }
+
+    //read without notifying observers, for tools like the debugger
+    public int peek(int pos) {
+        return memory[pos & ADDRESS_MASK] & 0xFF;
+    }
+
     public int[] get(int start, int end) {
         int[] temp = new int[end - start + 1];
 
-        System.arraycopy(memory, start, temp, 0, end - start + 1);
+        for (int i = 0; i < temp.length; ++i) {
+            temp[i] = memory[start + i] & 0xFF;
+        }
 
         return temp;
     }
 
     public void set(int value, int pos) {
-        memory[pos] = value;
+        pos &= ADDRESS_MASK;
+        memory[pos] = (byte) value;
+
+        for (MemoryObserver observer : observers) {
+            observer.onWrite(pos, value);
+        }
     }
 
     public void set(int[] values, int pos) {
+        for (int i = 0; i < values.length; ++i) {
+            memory[pos + i] = (byte) values[i];
+        }
+    }
+
+    public void set(byte[] values, int pos) {
         System.arraycopy(values, 0, memory, pos, values.length);
     }
 
+    //copies the remaining bytes without changing the position of the buffer
+    public void set(ByteBuffer values, int pos) {
+        values.get(values.position(), memory, pos, values.remaining());
+    }
+
+    //used for snapshots
+    public byte[] toBytes() {
+        return memory.clone();
+    }
+
     public void clear(int start, int end) {
-        Arrays.fill(memory, start, end, 0);
+        Arrays.fill(memory, start, end, (byte) 0);
     }
 
     public void clear(int start) {
-        Arrays.fill(memory, start, MEMORY_SIZE - 1, 0);
+        Arrays.fill(memory, start, MEMORY_SIZE, (byte) 0);
     }
 
     public void clear() {
-        Arrays.fill(memory, 0);
+        Arrays.fill(memory, (byte) 0);
+    }
+
+    public synchronized void addObserver(MemoryObserver observer) {
+        MemoryObserver[] temp = Arrays.copyOf(observers, observers.length + 1);
+        temp[observers.length] = observer;
+        observers = temp;
+    }
+
+    public synchronized void removeObserver(MemoryObserver observer) {
+        observers = Arrays.stream(observers)
+                .filter(o -> o != observer)
+                .toArray(MemoryObserver[]::new);
     }
 
     public void print() {
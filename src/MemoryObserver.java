@@ -0,0 +1,9 @@
+public interface MemoryObserver {
+    void onWrite(int pos, int value);
+
+    default void onRead(int pos) {
+    }
+
+    default void onExecute(int pos) {
+    }
+}
@@ -0,0 +1,148 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+//counts reads, writes and executions per address and detects self-modifying code
+public class MemoryProfiler implements MemoryObserver {
+    private static final int HEATMAP_COLUMNS = 256;
+    private static final int HEATMAP_SCALE = 2;
+
+    private final int[] reads = new int[Memory.MEMORY_SIZE];
+    private final int[] writes = new int[Memory.MEMORY_SIZE];
+    private final int[] executes = new int[Memory.MEMORY_SIZE];
+
+    //addresses written after they were executed
+    private final BitSet selfModified = new BitSet(Memory.MEMORY_SIZE);
+    private int selfModifyingWrites;
+
+
+    @Override
+    public void onRead(int pos) {
+        ++reads[pos];
+    }
+
+    @Override
+    public void onWrite(int pos, int value) {
+        ++writes[pos];
+
+        if (executes[pos] > 0) {
+            selfModified.set(pos);
+            ++selfModifyingWrites;
+        }
+    }
+
+    @Override
+    public void onExecute(int pos) {
+        ++executes[pos];
+        ++executes[(pos + 1) % Memory.MEMORY_SIZE];
+    }
+
+    public void reset() {
+        Arrays.fill(reads, 0);
+        Arrays.fill(writes, 0);
+        Arrays.fill(executes, 0);
+        selfModified.clear();
+        selfModifyingWrites = 0;
+    }
+
+    public boolean isSelfModifying() {
+        return !selfModified.isEmpty();
+    }
+
+    //one cell per address, red = writes, green = reads, blue = executions, log scaled
+    public void exportHeatmap(Path path) throws IOException {
+        int rows = Memory.MEMORY_SIZE / HEATMAP_COLUMNS;
+        BufferedImage image = new BufferedImage(HEATMAP_COLUMNS * HEATMAP_SCALE, rows * HEATMAP_SCALE,
+                BufferedImage.TYPE_INT_RGB);
+
+        double maxReads = Math.log1p(max(reads));
+        double maxWrites = Math.log1p(max(writes));
+        double maxExecutes = Math.log1p(max(executes));
+
+        for (int pos = 0; pos < Memory.MEMORY_SIZE; ++pos) {
+            int red = intensity(writes[pos], maxWrites);
+            int green = intensity(reads[pos], maxReads);
+            int blue = intensity(executes[pos], maxExecutes);
+
+            //self-modified addresses are always drawn white
+            int rgb = selfModified.get(pos) ? 0xFFFFFF : red << 16 | green << 8 | blue;
+
+            int cellX = pos % HEATMAP_COLUMNS * HEATMAP_SCALE;
+            int cellY = pos / HEATMAP_COLUMNS * HEATMAP_SCALE;
+            for (int y = 0; y < HEATMAP_SCALE; ++y) {
+                for (int x = 0; x < HEATMAP_SCALE; ++x) {
+                    image.setRGB(cellX + x, cellY + y, rgb);
+                }
+            }
+        }
+
+        ImageIO.write(image, "png", path.toFile());
+    }
+
+    public void exportReport(Path path, String rom) throws IOException {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("{\n");
+        builder.append("  \"rom\": \"").append(escape(rom)).append("\",\n");
+        builder.append("  \"selfModifying\": ").append(isSelfModifying()).append(",\n");
+        builder.append("  \"selfModifyingWrites\": ").append(selfModifyingWrites).append(",\n");
+        builder.append("  \"totalReads\": ").append(sum(reads)).append(",\n");
+        builder.append("  \"totalWrites\": ").append(sum(writes)).append(",\n");
+        builder.append("  \"totalExecutes\": ").append(sum(executes)).append(",\n");
+
+        builder.append("  \"selfModifiedAddresses\": ")
+                .append(Arrays.toString(selfModified.stream().toArray()))
+                .append(",\n");
+
+        //only addresses that were touched at all
+        builder.append("  \"addresses\": [");
+        boolean first = true;
+        for (int pos = 0; pos < Memory.MEMORY_SIZE; ++pos) {
+            if (reads[pos] == 0 && writes[pos] == 0 && executes[pos] == 0) {
+                continue;
+            }
+
+            builder.append(first ? "\n" : ",\n");
+            builder.append(String.format("    {\"address\": %d, \"reads\": %d, \"writes\": %d, \"executes\": %d}",
+                    pos, reads[pos], writes[pos], executes[pos]));
+            first = false;
+        }
+        builder.append(first ? "]\n" : "\n  ]\n");
+        builder.append("}\n");
+
+        Files.write(path, builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int intensity(int count, double logMax) {
+        if (count == 0 || logMax == 0) {
+            return 0;
+        }
+
+        return (int) (Math.log1p(count) / logMax * 255);
+    }
+
+    private static int max(int[] counts) {
+        int max = 0;
+        for (int count : counts) {
+            max = Math.max(max, count);
+        }
+        return max;
+    }
+
+    private static long sum(int[] counts) {
+        long sum = 0;
+        for (int count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,93 @@
+//a condition like "V3 == 0x10" or "I >= 0x300" that breaks the debugger once it becomes true
+public class RegisterCondition {
+    private static final int I_REGISTER = 16;
+    private static final String[] OPERATORS = {"==", "!=", "<=", ">=", "<", ">"};
+
+    private final int register;
+    private final String operator;
+    private final int value;
+
+    private boolean lastResult;
+
+
+    private RegisterCondition(int register, String operator, int value) {
+        this.register = register;
+        this.operator = operator;
+        this.value = value;
+    }
+
+    public static RegisterCondition parse(String text) {
+        String condition = text.replace(" ", "").toUpperCase();
+
+        for (String operator : OPERATORS) {
+            int index = condition.indexOf(operator);
+            if (index <= 0) {
+                continue;
+            }
+
+            String left = condition.substring(0, index);
+            String right = condition.substring(index + operator.length());
+
+            int register;
+            if (left.equals("I")) {
+                register = I_REGISTER;
+            } else if (left.length() == 2 && left.charAt(0) == 'V') {
+                register = Character.digit(left.charAt(1), 16);
+            } else {
+                register = -1;
+            }
+
+            if (register < 0) {
+                throw new IllegalArgumentException("Unknown register: " + left);
+            }
+
+            return new RegisterCondition(register, operator, parseValue(right));
+        }
+
+        throw new IllegalArgumentException("Invalid condition: " + text);
+    }
+
+    private static int parseValue(String text) {
+        try {
+            if (text.startsWith("0X")) {
+                return Integer.parseInt(text.substring(2), 16);
+            }
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value: " + text);
+        }
+    }
+
+    //only true on the cycle the condition changes from false to true
+    public boolean triggered(CPU cpu) {
+        int current = register == I_REGISTER ? cpu.getiReg() : cpu.getvReg(register);
+        boolean result = evaluate(current);
+        boolean triggered = result && !lastResult;
+
+        lastResult = result;
+        return triggered;
+    }
+
+    private boolean evaluate(int current) {
+        switch (operator) {
+            case "==":
+                return current == value;
+            case "!=":
+                return current != value;
+            case "<=":
+                return current <= value;
+            case ">=":
+                return current >= value;
+            case "<":
+                return current < value;
+            default:
+                return current > value;
+        }
+    }
+
+    @Override
+    public String toString() {
+        String name = register == I_REGISTER ? "I" : String.format("V%X", register);
+        return String.format("%s %s 0x%X", name, operator, value);
+    }
+}
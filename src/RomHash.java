@@ -0,0 +1,33 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public class RomHash {
+    public static final int LENGTH = 20;
+
+    private RomHash() {
+    }
+
+    public static String sha1(byte[] data) {
+        return HexFormat.of().formatHex(digest(data));
+    }
+
+    public static byte[] digest(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            //every java platform has to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static byte[] parse(String sha1) {
+        byte[] hash = HexFormat.of().parseHex(sha1);
+
+        if (hash.length != LENGTH) {
+            throw new IllegalArgumentException("Not a SHA-1 hash: " + sha1);
+        }
+
+        return hash;
+    }
+}
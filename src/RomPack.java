@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+//many roms in one memory mapped file, looked up by their SHA-1
+//header: [int magic][int version][int count][int reserved]
+//index:  count * [20 byte sha1][int offset][int length], sorted by sha1
+//data:   the rom bytes
+//a pack is mapped as a whole, so it is limited to 2 GB
+public class RomPack implements AutoCloseable {
+    private static final int MAGIC = 0x4338504B;    //C8PK
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = RomHash.LENGTH + 4 + 4;
+    private static final int MAX_ROM_SIZE = Memory.MEMORY_SIZE - 0x200;
+    private static final long MAX_PACK_SIZE = Integer.MAX_VALUE;
+    //files without an extension are roms too, like the ones in roms/
+    private static final Set<String> ROM_EXTENSIONS = Set.of("", "ch8", "c8", "sc8", "xo8");
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+
+    private RomPack(FileChannel channel, MappedByteBuffer buffer, int count) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    //the pack can be shared by many threads, it is only read with absolute gets
+    public static RomPack open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            long size = channel.size();
+            if (size > MAX_PACK_SIZE) {
+                throw new IOException("Rom pack larger than 2 GB: " + path);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int count = validate(buffer, path);
+
+            return new RomPack(channel, buffer, count);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    //checks the header and that every index entry points inside the mapping, returns the rom count
+    private static int validate(MappedByteBuffer buffer, Path path) throws IOException {
+        int size = buffer.capacity();
+        if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a rom pack: " + path);
+        }
+
+        int count = buffer.getInt(8);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > size) {
+            throw new IOException("Rom pack index truncated: " + path);
+        }
+
+        int dataStart = HEADER_SIZE + count * ENTRY_SIZE;
+        for (int entry = 0; entry < count; ++entry) {
+            int position = HEADER_SIZE + entry * ENTRY_SIZE + RomHash.LENGTH;
+            int offset = buffer.getInt(position);
+            int length = buffer.getInt(position + 4);
+
+            if (offset < dataStart || length < 0 || length > MAX_ROM_SIZE || (long) offset + length > size) {
+                throw new IOException("Rom pack entry " + entry + " out of range: " + path);
+            }
+        }
+
+        return count;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean contains(String sha1) {
+        return find(RomHash.parse(sha1)) >= 0;
+    }
+
+    //a view of the rom bytes inside the mapping, nothing is copied
+    public ByteBuffer get(String sha1) {
+        int entry = find(RomHash.parse(sha1));
+        if (entry < 0) {
+            throw new IllegalArgumentException("Rom not in pack: " + sha1);
+        }
+
+        int position = HEADER_SIZE + entry * ENTRY_SIZE + RomHash.LENGTH;
+        int offset = buffer.getInt(position);
+        int length = buffer.getInt(position + 4);
+
+        return buffer.slice(offset, length);
+    }
+
+    public void loadInto(CPU cpu, String sha1) {
+        cpu.loadRom(get(sha1), sha1.toLowerCase(Locale.ROOT));
+    }
+
+    public List<String> hashes() {
+        List<String> hashes = new ArrayList<>(count);
+        byte[] hash = new byte[RomHash.LENGTH];
+
+        for (int entry = 0; entry < count; ++entry) {
+            buffer.get(HEADER_SIZE + entry * ENTRY_SIZE, hash);
+            hashes.add(HexFormat.of().formatHex(hash));
+        }
+
+        return hashes;
+    }
+
+    //binary search over the index
+    private int find(byte[] hash) {
+        byte[] current = new byte[RomHash.LENGTH];
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            buffer.get(HEADER_SIZE + middle * ENTRY_SIZE, current);
+
+            int compare = Arrays.compareUnsigned(current, hash);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static class Rom {
+        final byte[] hash;
+        final byte[] data;
+
+        Rom(byte[] hash, byte[] data) {
+            this.hash = hash;
+            this.data = data;
+        }
+    }
+
+    //packs every rom below the directory, duplicates are only stored once
+    public static List<String> build(Path directory, Path pack) throws IOException {
+        Path output = pack.toAbsolutePath().normalize();
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            files = stream
+                    .filter(Files::isRegularFile)
+                    .filter(RomPack::isRom)
+                    .filter(file -> !file.toAbsolutePath().normalize().equals(output))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        List<Rom> roms = new ArrayList<>();
+        Set<String> packed = new HashSet<>();
+        List<String> listing = new ArrayList<>();
+        for (Path file : files) {
+            byte[] data = Files.readAllBytes(file);
+            if (data.length > MAX_ROM_SIZE) {
+                System.err.println("Skipping " + file + ", too large for a rom");
+                continue;
+            }
+
+            byte[] hash = RomHash.digest(data);
+            String sha1 = HexFormat.of().formatHex(hash);
+            listing.add(sha1 + "  " + directory.relativize(file));
+
+            if (packed.add(sha1)) {
+                roms.add(new Rom(hash, data));
+            }
+        }
+        roms.sort((a, b) -> Arrays.compareUnsigned(a.hash, b.hash));
+
+        long size = HEADER_SIZE + (long) roms.size() * ENTRY_SIZE;
+        for (Rom rom : roms) {
+            size += rom.data.length;
+        }
+        if (size > MAX_PACK_SIZE) {
+            throw new IOException("Roms need " + size + " bytes, a pack is limited to 2 GB");
+        }
+
+        int offset = HEADER_SIZE + roms.size() * ENTRY_SIZE;
+        ByteBuffer index = ByteBuffer.allocate(offset);
+        index.putInt(MAGIC).putInt(VERSION).putInt(roms.size()).putInt(0);
+        for (Rom rom : roms) {
+            index.put(rom.hash).putInt(offset).putInt(rom.data.length);
+            offset += rom.data.length;
+        }
+        index.flip();
+
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+
+            for (Rom rom : roms) {
+                ByteBuffer data = ByteBuffer.wrap(rom.data);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+        }
+
+        return listing;
+    }
+
+    private static boolean isRom(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String extension = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+
+        return ROM_EXTENSIONS.contains(extension);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: RomPack <rom directory> <pack file>");
+            return;
+        }
+
+        List<String> listing = build(Paths.get(args[0]), Paths.get(args[1]));
+        listing.forEach(System.out::println);
+
+        try (RomPack pack = open(Paths.get(args[1]))) {
+            System.out.println(pack.size() + " roms packed");
+        }
+    }
+}
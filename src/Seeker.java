@@ -0,0 +1,144 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+//runs the cpu headless at maximum speed to a target cycle or frame
+public class Seeker {
+    private static final long CHECKPOINT_INTERVAL = 1000;   //frames
+    private static final int MAX_CHECKPOINTS = 128;  //about 65KB each
+
+    private final CPU cpu;
+    //keyed by frame, every checkpoint is taken right after the timers of that frame
+    private final TreeMap<Long, Snapshot> checkpoints = new TreeMap<>();
+    private int cyclesPerFrame;
+
+
+    public Seeker(CPU cpu, int cyclesPerFrame) {
+        this.cpu = cpu;
+        this.cyclesPerFrame = cyclesPerFrame;
+    }
+
+    //Main runs the cpu at the given speed and the timers every 17ms
+    public static int cyclesPerFrame(int speed) {
+        return (int) Math.max(1, speed * 17L / 1000);
+    }
+
+    //has to be called after a rom was loaded, the current state becomes the first checkpoint
+    public void reset() {
+        checkpoints.clear();
+        checkpoints.put(cpu.getFrames(), cpu.snapshot());
+    }
+
+    //checkpoints after the first one were run at the old speed, so they are dropped
+    public void setCyclesPerFrame(int cyclesPerFrame) {
+        if (cyclesPerFrame == this.cyclesPerFrame) {
+            return;
+        }
+
+        this.cyclesPerFrame = cyclesPerFrame;
+        if (!checkpoints.isEmpty()) {
+            checkpoints.tailMap(checkpoints.firstKey(), false).clear();
+        }
+    }
+
+    public int getCyclesPerFrame() {
+        return cyclesPerFrame;
+    }
+
+    //a forward seek fast forwards the current state, only a backward seek rewinds to a checkpoint
+    public void seekToFrame(long frame) {
+        if (frame >= cpu.getFrames()) {
+            checkpointCurrent();
+            run(null, Long.MAX_VALUE, frame);
+            return;
+        }
+
+        Map.Entry<Long, Snapshot> start = checkpoints.floorEntry(frame);
+        if (start == null) {
+            throw new IllegalStateException("No checkpoint before frame " + frame);
+        }
+
+        run(start.getValue(), Long.MAX_VALUE, frame);
+    }
+
+    public void seekToCycle(long target) {
+        if (target >= cpu.getCycles()) {
+            checkpointCurrent();
+            run(null, target, Long.MAX_VALUE);
+            return;
+        }
+
+        Snapshot start = null;
+        for (Snapshot checkpoint : checkpoints.descendingMap().values()) {
+            if (checkpoint.getCycles() <= target) {
+                start = checkpoint;
+                break;
+            }
+        }
+
+        if (start == null) {
+            throw new IllegalStateException("No checkpoint before cycle " + target);
+        }
+
+        run(start, target, Long.MAX_VALUE);
+    }
+
+    //the live state holds the user's input, so a later backward seek can return to it
+    private void checkpointCurrent() {
+        if (!checkpoints.containsKey(cpu.getFrames())) {
+            checkpoints.put(cpu.getFrames(), cpu.snapshot());
+            thin();
+        }
+    }
+
+    //continues from the current state if start is null
+    private void run(Snapshot start, long targetCycle, long targetFrame) {
+        if (start != null) {
+            cpu.restore(start);
+        }
+        cpu.setMuted(true);
+
+        try {
+            int cycle = 0;  //cycles into the current frame
+            while (cpu.getCycles() < targetCycle && cpu.getFrames() < targetFrame) {
+                cpu.cycle();
+
+                if (++cycle < cyclesPerFrame) {
+                    continue;
+                }
+                cycle = 0;
+                cpu.updateTimers();
+
+                if (cpu.getFrames() % CHECKPOINT_INTERVAL == 0 && !checkpoints.containsKey(cpu.getFrames())) {
+                    checkpoints.put(cpu.getFrames(), cpu.snapshot());
+                    thin();
+                }
+            }
+        } finally {
+            cpu.setMuted(false);
+        }
+    }
+
+    //drops every second checkpoint but the first, so memory stays bounded for long sessions
+    private void thin() {
+        if (checkpoints.size() <= MAX_CHECKPOINTS) {
+            return;
+        }
+
+        Iterator<Long> iterator = checkpoints.keySet().iterator();
+        iterator.next();
+
+        boolean drop = false;
+        while (iterator.hasNext()) {
+            iterator.next();
+            if (drop) {
+                iterator.remove();
+            }
+            drop = !drop;
+        }
+    }
+
+    public int getCheckpointCount() {
+        return checkpoints.size();
+    }
+}
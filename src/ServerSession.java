@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+//one headless emulator owned by the EmulatorServer, only ever touched by the selector thread
+public class ServerSession {
+    //[FRAME][short length][int frame][byte hires][short rows]
+    private static final int HEADER_SIZE = 10;
+    //a full frame of row deltas: 4 planes * 64 rows * (4 byte row header + 16 bytes)
+    private static final int OUT_SIZE = HEADER_SIZE + FrameBuffer.PLANES * FrameBuffer.MAX_HEIGHT * 20;
+    private static final int WORDS = FrameBuffer.MAX_WIDTH / 64;
+    //an empty update is sent after this many frames without a change, so clients see the frame counter move
+    private static final int KEEPALIVE_FRAMES = 30;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+
+    private final FrameBuffer frameBuffer = new FrameBuffer();
+    private final Keyboard keyboard = new Keyboard();
+    private final CPU cpu = new CPU(frameBuffer, keyboard);
+
+    //the framebuffer as the client knows it
+    private final long[] sent = new long[FrameBuffer.PLANES * FrameBuffer.MAX_HEIGHT * WORDS];
+    private int sentVersion = -1;
+    private int sentFrame = 0;
+    private int frame = 0;
+
+    private final ByteBuffer in = ByteBuffer.allocate(64);
+    private final ByteBuffer out = ByteBuffer.allocate(OUT_SIZE);
+    private boolean flushing = false;
+
+
+    public ServerSession(SocketChannel channel, SelectionKey key, byte[] rom) {
+        this.channel = channel;
+        this.key = key;
+
+        cpu.setMuted(true);
+        cpu.loadRom(rom);
+    }
+
+    public void step(int cycles) {
+        for (int i = 0; i < cycles; ++i) {
+            cpu.cycle();
+        }
+
+        cpu.updateTimers();
+        ++frame;
+    }
+
+    public void read() throws IOException {
+        if (channel.read(in) < 0) {
+            throw new IOException("Client closed the connection");
+        }
+
+        in.flip();
+        while (in.remaining() >= 2) {
+            int type = in.get();
+            int index = in.get() & 0xF;
+
+            keyboard.setKey(index, type == EmulatorServer.KEY_DOWN);
+        }
+        in.compact();
+    }
+
+    //only encodes a new delta once the last one was written, a slow client simply gets fewer frames
+    public void flush() throws IOException {
+        if (!flushing) {
+            if (frameBuffer.getVersion() == sentVersion && frame - sentFrame < KEEPALIVE_FRAMES) {
+                return;
+            }
+
+            encode();
+            flushing = true;
+        }
+
+        channel.write(out);
+
+        if (out.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            out.clear();
+            flushing = false;
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    //every changed row is sent as xor against the last sent row, only the non zero bytes are written
+    private void encode() {
+        sentVersion = frameBuffer.getVersion();
+        sentFrame = frame;
+
+        out.clear();
+        out.put(EmulatorServer.FRAME);
+        out.putShort((short) 0);    //length, filled in below
+        out.putInt(frame);
+        out.put((byte) (frameBuffer.isHires() ? 1 : 0));
+        int countPosition = out.position();
+        out.putShort((short) 0);
+
+        int rows = 0;
+        for (int plane = 0; plane < FrameBuffer.PLANES; ++plane) {
+            for (int y = 0; y < FrameBuffer.MAX_HEIGHT; ++y) {
+                int index = (plane * FrameBuffer.MAX_HEIGHT + y) * WORDS;
+                long high = frameBuffer.getWord(plane, y, 0);
+                long low = frameBuffer.getWord(plane, y, 1);
+                long highDelta = high ^ sent[index];
+                long lowDelta = low ^ sent[index + 1];
+
+                if ((highDelta | lowDelta) == 0) {
+                    continue;
+                }
+
+                sent[index] = high;
+                sent[index + 1] = low;
+                ++rows;
+
+                int mask = byteMask(highDelta) << 8 | byteMask(lowDelta);
+                out.put((byte) plane);
+                out.put((byte) y);
+                out.putShort((short) mask);
+                putBytes(highDelta);
+                putBytes(lowDelta);
+            }
+        }
+
+        out.putShort(countPosition, (short) rows);
+        out.putShort(1, (short) (out.position() - 3));
+        out.flip();
+    }
+
+    //bit 7 is the most significant byte
+    private static int byteMask(long word) {
+        int mask = 0;
+
+        for (int i = 0; i < 8; ++i) {
+            if ((word >>> (56 - i * 8) & 0xFF) != 0) {
+                mask |= 0x80 >> i;
+            }
+        }
+
+        return mask;
+    }
+
+    private void putBytes(long word) {
+        for (int i = 0; i < 8; ++i) {
+            byte value = (byte) (word >>> (56 - i * 8));
+            if (value != 0) {
+                out.put(value);
+            }
+        }
+    }
+
+    public void close() {
+        key.cancel();
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+//complete machine state, used as checkpoint by the Seeker
+public class Snapshot {
+    final int pc;
+    final int[] stack;
+    final int sp;
+    final int iReg;
+    final int[] vReg;
+    final int delayTimer;
+    final int soundTimer;
+    final int randomState;
+    final long cycles;
+    final long frames;
+
+    final byte[] memory;
+    final FrameBuffer graphic;
+
+
+    Snapshot(int pc, int[] stack, int sp, int iReg, int[] vReg, int delayTimer, int soundTimer,
+             int randomState, long cycles, long frames, byte[] memory, FrameBuffer graphic) {
+        this.pc = pc;
+        this.stack = stack;
+        this.sp = sp;
+        this.iReg = iReg;
+        this.vReg = vReg;
+        this.delayTimer = delayTimer;
+        this.soundTimer = soundTimer;
+        this.randomState = randomState;
+        this.cycles = cycles;
+        this.frames = frames;
+        this.memory = memory;
+        this.graphic = graphic;
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+}